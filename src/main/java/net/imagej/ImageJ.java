@@ -41,7 +41,9 @@
 import net.imagej.display.ScreenCaptureService;
 import net.imagej.display.WindowService;
 import net.imagej.lut.LUTService;
+import net.imagej.metrics.MetricsService;
 import net.imagej.notebook.NotebookService;
+import net.imagej.notebook.ThumbnailService;
 import net.imagej.ops.OpService;
 import net.imagej.render.RenderingService;
 import net.imagej.sampler.SamplerService;
@@ -133,6 +135,15 @@ public LUTService lut() {
 		return get(LUTService.class);
 	}
 
+	/**
+	 * Gets this application context's {@link MetricsService}.
+	 *
+	 * @return The {@link MetricsService} of this application context.
+	 */
+	public MetricsService metrics() {
+		return get(MetricsService.class);
+	}
+
 	/**
 	 * Gets this application context's {@link NotebookService}.
 	 *
@@ -187,6 +198,15 @@ public ScreenCaptureService screenCapture() {
 		return get(ScreenCaptureService.class);
 	}
 
+	/**
+	 * Gets this application context's {@link ThumbnailService}.
+	 *
+	 * @return The {@link ThumbnailService} of this application context.
+	 */
+	public ThumbnailService thumbnail() {
+		return get(ThumbnailService.class);
+	}
+
 	/**
 	 * Gets this application context's {@link UpdateService}.
 	 *
@@ -0,0 +1,92 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2015 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+
+package net.imagej.autoscale;
+
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+import net.imagej.ImageJService;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.type.numeric.RealType;
+
+/**
+ * Interface for services that make a display range available quickly for very
+ * large images.
+ * <p>
+ * Where {@link AutoscaleService} computes the exact range up front, this
+ * service first {@link #estimate estimates} it from a stratified sample of the
+ * pixels, then {@link #refine refines} it in the background. The resulting
+ * {@link RangeTracker} keeps the exact range current as planes are modified.
+ * </p>
+ */
+public interface ApproximateAutoscaleService extends ImageJService {
+
+	/** Default number of pixels sampled by {@link #estimate}. */
+	int DEFAULT_SAMPLE_COUNT = 10000;
+
+	/**
+	 * Estimates the range of the given image from
+	 * {@link #DEFAULT_SAMPLE_COUNT} samples.
+	 */
+	default EstimatedRange estimate(
+		final RandomAccessibleInterval<? extends RealType<?>> source)
+	{
+		return estimate(source, DEFAULT_SAMPLE_COUNT);
+	}
+
+	/**
+	 * Estimates the range of the given image by stratified sampling: the pixels
+	 * are divided into {@code sampleCount} runs of equal length in raster
+	 * order, and one randomly chosen pixel of each run is visited.
+	 */
+	EstimatedRange estimate(RandomAccessibleInterval<? extends RealType<?>> source,
+		int sampleCount);
+
+	/**
+	 * Computes the exact range of the given image in the background.
+	 *
+	 * @param source The image whose range to compute.
+	 * @param listener Optional callback, invoked with the range of the planes
+	 *          scanned so far each time a plane completes.
+	 * @return A future yielding a fully scanned {@link RangeTracker}. Once
+	 *         scanned, it is {@link RangeTracker#markStale() marked stale},
+	 *         notifying the listener, whenever a {@code DatasetUpdatedEvent}
+	 *         reports changed pixels of the source (or of the dataset it belongs
+	 *         to). It is not rescanned: callers update the changed planes via
+	 *         {@link RangeTracker#planeModified}.
+	 */
+	Future<RangeTracker> refine(
+		RandomAccessibleInterval<? extends RealType<?>> source,
+		Consumer<DataRange> listener);
+
+}
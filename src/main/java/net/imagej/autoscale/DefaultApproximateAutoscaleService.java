@@ -0,0 +1,147 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2015 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+
+package net.imagej.autoscale;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+import net.imagej.Dataset;
+import net.imagej.event.DatasetUpdatedEvent;
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.util.IntervalIndexer;
+import net.imglib2.util.Intervals;
+
+import org.scijava.event.EventHandler;
+import org.scijava.plugin.Parameter;
+import org.scijava.plugin.Plugin;
+import org.scijava.service.AbstractService;
+import org.scijava.service.Service;
+import org.scijava.thread.ThreadService;
+
+/**
+ * Default implementation of {@link ApproximateAutoscaleService}.
+ */
+@Plugin(type = Service.class)
+public class DefaultApproximateAutoscaleService extends AbstractService
+	implements ApproximateAutoscaleService
+{
+
+	@Parameter
+	private ThreadService threadService;
+
+	private final Random random = new Random();
+
+	/** Trackers to mark stale on dataset updates, held only weakly. */
+	private final Set<RangeTracker> trackers = Collections.synchronizedSet(
+		Collections.newSetFromMap(new WeakHashMap<>()));
+
+	// -- ApproximateAutoscaleService methods --
+
+	@Override
+	public EstimatedRange estimate(
+		final RandomAccessibleInterval<? extends RealType<?>> source,
+		final int sampleCount)
+	{
+		if (sampleCount <= 0) {
+			throw new IllegalArgumentException("Invalid sample count: " +
+				sampleCount);
+		}
+		final long size = Intervals.numElements(source);
+		final long[] dims = Intervals.dimensionsAsLongArray(source);
+		final long[] min = Intervals.minAsLongArray(source);
+		final long[] pos = new long[dims.length];
+		final RandomAccess<? extends RealType<?>> ra = source.randomAccess();
+
+		final boolean exact = sampleCount >= size;
+		final long n = exact ? size : sampleCount;
+		double lo = Double.POSITIVE_INFINITY, hi = Double.NEGATIVE_INFINITY;
+		for (long i = 0; i < n; i++) {
+			final long index;
+			if (exact) index = i;
+			else {
+				final long start = size * i / n;
+				final long end = size * (i + 1) / n;
+				index = start + (long) (random.nextDouble() * (end - start));
+			}
+			IntervalIndexer.indexToPositionWithOffset(index, dims, min, pos);
+			ra.setPosition(pos);
+			final double v = ra.get().getRealDouble();
+			if (v < lo) lo = v;
+			if (v > hi) hi = v;
+		}
+		return new EstimatedRange(lo, hi, n, exact);
+	}
+
+	@Override
+	public Future<RangeTracker> refine(
+		final RandomAccessibleInterval<? extends RealType<?>> source,
+		final Consumer<DataRange> listener)
+	{
+		final RangeTracker tracker = new RangeTracker(source, listener);
+		return threadService.run(() -> {
+			tracker.scanAll();
+			trackers.add(tracker);
+			return tracker;
+		});
+	}
+
+	// -- Event handlers --
+
+	@EventHandler
+	protected void onEvent(final DatasetUpdatedEvent evt) {
+		if (evt.isMetaDataOnly()) return;
+		final Dataset dataset = evt.getObject();
+		final List<RangeTracker> affected = new ArrayList<>();
+		synchronized (trackers) {
+			for (final RangeTracker tracker : trackers) {
+				final Object source = tracker.getSource();
+				if (source == dataset || source == dataset.getImgPlus()) {
+					affected.add(tracker);
+				}
+			}
+		}
+		// NB: Notify outside the lock, since listeners may run arbitrary code.
+		for (final RangeTracker tracker : affected) {
+			tracker.markStale();
+		}
+	}
+
+}
@@ -0,0 +1,88 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2015 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+
+package net.imagej.autoscale;
+
+/**
+ * A {@link DataRange} estimated from a sample of the pixels of an image.
+ * <p>
+ * A sampled range can only be narrower than the true range. Its quality is
+ * expressed by {@link #getOutlierFraction(double)}: with the given confidence,
+ * at most that fraction of all pixels lies outside the estimated range.
+ * </p>
+ */
+public class EstimatedRange extends DataRange {
+
+	private final long sampleCount;
+	private final boolean exact;
+
+	public EstimatedRange(final double min, final double max,
+		final long sampleCount, final boolean exact)
+	{
+		super(min, max);
+		this.sampleCount = sampleCount;
+		this.exact = exact;
+	}
+
+	/** Gets the number of pixels the estimate is based on. */
+	public long getSampleCount() {
+		return sampleCount;
+	}
+
+	/** Gets whether every pixel was sampled, making the range exact. */
+	public boolean isExact() {
+		return exact;
+	}
+
+	/**
+	 * Gets an upper bound on the fraction of pixels lying outside this range,
+	 * which holds with the given confidence.
+	 * <p>
+	 * For {@code n} samples, the probability that more than a fraction
+	 * {@code t} of the pixels exceeds the sampled maximum is at most
+	 * {@code (1 - t)^n}; the same holds below the minimum. Allowing an error of
+	 * {@code alpha = (1 - confidence) / 2} in each tail gives the per-tail bound
+	 * {@code t = 1 - alpha^(1/n)}. By the union bound, both tails hold together
+	 * with the given confidence, so the returned fraction is
+	 * {@code 2 * (1 - alpha^(1/n))}.
+	 * </p>
+	 *
+	 * @param confidence Confidence level in (0, 1), e.g. 0.95.
+	 */
+	public double getOutlierFraction(final double confidence) {
+		if (exact) return 0;
+		if (sampleCount == 0) return 1;
+		final double alpha = (1 - confidence) / 2;
+		return 2 * (1 - Math.pow(alpha, 1.0 / sampleCount));
+	}
+
+}
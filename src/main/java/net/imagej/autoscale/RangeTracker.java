@@ -0,0 +1,224 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2015 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+
+package net.imagej.autoscale;
+
+import java.util.function.Consumer;
+
+import net.imglib2.Cursor;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.util.IntervalIndexer;
+import net.imglib2.view.Views;
+
+/**
+ * Tracks the exact minimum and maximum of an image plane by plane, so that
+ * the overall range can be kept current as individual planes change without
+ * rescanning the whole image.
+ * <p>
+ * Planes are the XY slices of the image, numbered in raster order over the
+ * remaining dimensions. Until every plane has been scanned, {@link #getRange()}
+ * reports the range of the planes seen so far.
+ * </p>
+ * <p>
+ * Trackers obtained from {@link ApproximateAutoscaleService#refine} are
+ * {@link #markStale() marked stale} when a {@code DatasetUpdatedEvent} reports
+ * changed pixels of their image. The event does not tell which planes changed,
+ * so nothing is rescanned automatically: callers report the modified planes
+ * via {@link #planeModified(int)}, or call {@link #scanAll()} if they do not
+ * know them.
+ * </p>
+ */
+public class RangeTracker {
+
+	private final RandomAccessibleInterval<? extends RealType<?>> source;
+	private final Consumer<DataRange> listener;
+	private final long[] planeDims;
+	private final double[] mins, maxs;
+	private final boolean[] scanned;
+	private int scannedCount;
+	private boolean stale;
+
+	public RangeTracker(
+		final RandomAccessibleInterval<? extends RealType<?>> source)
+	{
+		this(source, null);
+	}
+
+	/**
+	 * Creates a tracker which notifies the given listener with the overall
+	 * range each time a plane has been scanned.
+	 */
+	public RangeTracker(
+		final RandomAccessibleInterval<? extends RealType<?>> source,
+		final Consumer<DataRange> listener)
+	{
+		this.listener = listener;
+		if (source.numDimensions() < 2) {
+			throw new IllegalArgumentException("Source must be at least 2D");
+		}
+		this.source = source;
+		planeDims = new long[source.numDimensions() - 2];
+		long planeCount = 1;
+		for (int d = 0; d < planeDims.length; d++) {
+			planeDims[d] = source.dimension(d + 2);
+			planeCount *= planeDims[d];
+		}
+		if (planeCount > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Too many planes: " + planeCount);
+		}
+		mins = new double[(int) planeCount];
+		maxs = new double[(int) planeCount];
+		scanned = new boolean[(int) planeCount];
+	}
+
+	/** Gets the tracked image. */
+	public RandomAccessibleInterval<? extends RealType<?>> getSource() {
+		return source;
+	}
+
+	/** Gets the number of planes of the tracked image. */
+	public int getPlaneCount() {
+		return scanned.length;
+	}
+
+	/** Gets whether every plane has been scanned at least once. */
+	public synchronized boolean isComplete() {
+		return scannedCount == scanned.length;
+	}
+
+	/**
+	 * Gets the range of all planes scanned so far, or null if no plane has been
+	 * scanned yet.
+	 */
+	public synchronized DataRange getRange() {
+		if (scannedCount == 0) return null;
+		double min = Double.POSITIVE_INFINITY, max = Double.NEGATIVE_INFINITY;
+		for (int p = 0; p < scanned.length; p++) {
+			if (!scanned[p]) continue;
+			if (mins[p] < min) min = mins[p];
+			if (maxs[p] > max) max = maxs[p];
+		}
+		return new DataRange(min, max);
+	}
+
+	/**
+	 * Gets whether pixels may have changed since the last scan, in planes that
+	 * were not reported via {@link #planeModified(int)}.
+	 */
+	public synchronized boolean isStale() {
+		return stale;
+	}
+
+	/**
+	 * Records that pixels changed in unknown planes, and notifies the listener
+	 * with the range as last scanned. Nothing is rescanned.
+	 */
+	public void markStale() {
+		synchronized (this) {
+			stale = true;
+		}
+		if (listener != null) listener.accept(getRange());
+	}
+
+	/**
+	 * Rescans the given plane after its pixels changed, clearing the
+	 * {@link #isStale() stale} flag. Only that plane is visited.
+	 *
+	 * @return The updated overall range.
+	 */
+	public DataRange planeModified(final int plane) {
+		synchronized (this) {
+			stale = false;
+		}
+		scan(plane);
+		return getRange();
+	}
+
+	/** Scans the given plane and records its range. */
+	public void scan(final int plane) {
+		double min = Double.POSITIVE_INFINITY, max = Double.NEGATIVE_INFINITY;
+		final Cursor<? extends RealType<?>> c = //
+			Views.flatIterable(plane(plane)).cursor();
+		while (c.hasNext()) {
+			final double v = c.next().getRealDouble();
+			if (v < min) min = v;
+			if (v > max) max = v;
+		}
+		synchronized (this) {
+			mins[plane] = min;
+			maxs[plane] = max;
+			if (!scanned[plane]) {
+				scanned[plane] = true;
+				scannedCount++;
+			}
+		}
+		if (listener != null) listener.accept(getRange());
+	}
+
+	/**
+	 * Rescans every plane, e.g. after changes to unknown planes. If
+	 * interrupted, the tracker is left {@link #isStale() stale}.
+	 */
+	public void scanAll() {
+		synchronized (this) {
+			stale = false;
+		}
+		for (int p = 0; p < scanned.length; p++) {
+			if (Thread.currentThread().isInterrupted()) {
+				synchronized (this) {
+					stale = true;
+				}
+				break;
+			}
+			scan(p);
+		}
+	}
+
+	// -- Helper methods --
+
+	private RandomAccessibleInterval<? extends RealType<?>> plane(
+		final int plane)
+	{
+		if (plane < 0 || plane >= scanned.length) {
+			throw new IllegalArgumentException("No such plane: " + plane);
+		}
+		final long[] pos = new long[planeDims.length];
+		IntervalIndexer.indexToPosition(plane, planeDims, pos);
+		RandomAccessibleInterval<? extends RealType<?>> view = source;
+		for (int d = source.numDimensions() - 1; d >= 2; d--) {
+			view = Views.hyperSlice(view, d, source.min(d) + pos[d - 2]);
+		}
+		return view;
+	}
+
+}
@@ -0,0 +1,194 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2015 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+
+package net.imagej.daemon;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Properties;
+
+/**
+ * Thin command line client of the ImageJ daemon started with
+ * {@code --server}.
+ * <p>
+ * Usage:
+ * </p>
+ * <pre>
+ * DaemonClient [--port N] [--timeout ms] script &lt;file&gt; ['k1=v1,k2=v2']
+ * DaemonClient [--port N] [--timeout ms] op &lt;name&gt; [arg...]
+ * DaemonClient [--port N] [--timeout ms] batch &lt;file&gt;...
+ * DaemonClient [--port N] shutdown
+ * </pre>
+ * <p>
+ * The port and access token are read from the daemon file written by the
+ * server (see {@link #getDaemonFile()}). The job's output is printed, and the
+ * exit code is 0 if the job succeeded. The client uses nothing but the JDK,
+ * so it starts in a fraction of the time of a full ImageJ context.
+ * </p>
+ */
+public final class DaemonClient {
+
+	/** System property overriding the location of the daemon file. */
+	public static final String DAEMON_FILE_PROPERTY = "imagej.daemon.file";
+
+	/** Status line of a successful response. */
+	public static final String OK = "OK";
+
+	private DaemonClient() {
+		// prevent instantiation of utility class
+	}
+
+	/**
+	 * Gets the file through which a running server publishes its port and
+	 * access token: {@code ~/.imagej/daemon.properties} unless overridden by
+	 * the {@value #DAEMON_FILE_PROPERTY} system property.
+	 */
+	public static File getDaemonFile() {
+		final String path = System.getProperty(DAEMON_FILE_PROPERTY);
+		return path != null ? new File(path) : //
+			new File(System.getProperty("user.home"), ".imagej/daemon.properties");
+	}
+
+	/**
+	 * Reads the port and access token published by a running server, if any.
+	 *
+	 * @return The {@code port} and {@code token} properties, or empty
+	 *         properties if there is no daemon file.
+	 */
+	public static Properties readDaemonFile() throws IOException {
+		final Properties info = new Properties();
+		final File daemonFile = getDaemonFile();
+		if (daemonFile.exists()) {
+			try (final InputStream in = new FileInputStream(daemonFile)) {
+				info.load(in);
+			}
+		}
+		return info;
+	}
+
+	/**
+	 * Sends a request to the server on the given loopback port.
+	 *
+	 * @return The server's response: a status line ({@code OK}, {@code ERROR},
+	 *         {@code TIMEOUT}, {@code BUSY} or {@code DENIED}) followed by the
+	 *         job's output.
+	 */
+	public static String send(final int port, final DaemonRequest request)
+		throws IOException
+	{
+		try (final Socket socket = new Socket(InetAddress.getLoopbackAddress(),
+			port))
+		{
+			request.write(socket.getOutputStream());
+			socket.shutdownOutput();
+			return new String(DaemonRequest.readFully(socket.getInputStream()),
+				StandardCharsets.UTF_8);
+		}
+	}
+
+	public static void main(final String... args) throws IOException {
+		final Properties info = readDaemonFile();
+		int port = Integer.parseInt(info.getProperty("port", "-1"));
+		final DaemonRequest request = new DaemonRequest();
+		request.set("token", info.getProperty("token", ""));
+
+		int i = 0;
+		while (i < args.length && args[i].startsWith("--")) {
+			if (args[i].equals("--port") && i + 1 < args.length) {
+				port = Integer.parseInt(args[i + 1]);
+			}
+			else if (args[i].equals("--timeout") && i + 1 < args.length) {
+				request.set("timeout", args[i + 1]);
+			}
+			else usage();
+			i += 2;
+		}
+		if (i >= args.length) usage();
+		if (port < 0) {
+			System.err.println("No ImageJ daemon found; start one with --server");
+			System.exit(2);
+		}
+
+		final String type = args[i++];
+		request.set("type", type);
+		final StringBuilder body = new StringBuilder();
+		switch (type) {
+			case "script":
+				if (i >= args.length) usage();
+				final File script = new File(args[i++]);
+				final String name = script.getName();
+				request.set("language", name.substring(name.lastIndexOf('.') + 1));
+				if (i < args.length) request.set("inputs", args[i]);
+				body.append(new String(Files.readAllBytes(script.toPath()),
+					StandardCharsets.UTF_8));
+				break;
+			case "op":
+			case "batch":
+				if (i >= args.length) usage();
+				for (; i < args.length; i++) {
+					final String arg = type.equals("batch") ? //
+						new File(args[i]).getAbsolutePath() : args[i];
+					body.append(arg).append('\n');
+				}
+				break;
+			case "shutdown":
+				break;
+			default:
+				usage();
+		}
+		request.setBody(body.toString());
+
+		final String response = send(port, request);
+		final int eol = response.indexOf('\n');
+		final String status = eol < 0 ? response : response.substring(0, eol);
+		final String output = eol < 0 ? "" : response.substring(eol + 1);
+		if (OK.equals(status)) System.out.print(output);
+		else System.err.println(status + (output.isEmpty() ? "" : ": " + output));
+		System.exit(OK.equals(status) ? 0 : 1);
+	}
+
+	// -- Helper methods --
+
+	private static void usage() {
+		System.err.println("Usage: DaemonClient [--port N] [--timeout ms] " +
+			"(script <file> ['k=v,...'] | op <name> [arg...] | " +
+			"batch <file>... | shutdown)");
+		System.exit(2);
+	}
+
+}
@@ -0,0 +1,172 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2015 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+
+package net.imagej.daemon;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A job request sent to the {@link JobServer}.
+ * <p>
+ * On the wire, a request is a block of {@code key: value} header lines, an
+ * empty line, and a free-form body, all UTF-8 encoded and terminated by the
+ * end of the stream. Recognized headers are:
+ * </p>
+ * <ul>
+ * <li>{@code token}: the server's access token (required)</li>
+ * <li>{@code type}: {@code script}, {@code op}, {@code batch} or
+ * {@code shutdown}</li>
+ * <li>{@code language}: script language name or file extension (scripts)</li>
+ * <li>{@code inputs}: {@code key1=value1,key2=value2,...} (scripts and
+ * batches)</li>
+ * <li>{@code timeout}: job timeout in milliseconds (optional)</li>
+ * </ul>
+ * <p>
+ * The body holds the script source for {@code script} jobs; the op name
+ * followed by one argument per line for {@code op} jobs; and one script path
+ * per line for {@code batch} jobs.
+ * </p>
+ * <p>
+ * This class depends only on the JDK, so that {@link DaemonClient} starts
+ * quickly.
+ * </p>
+ */
+public class DaemonRequest {
+
+	/** Maximum accepted request size, in bytes. */
+	public static final int MAX_SIZE = 16 * 1024 * 1024;
+
+	/** Maximum accepted size of the header block, in bytes. */
+	public static final int MAX_HEADER_SIZE = 64 * 1024;
+
+	private final Map<String, String> headers = new LinkedHashMap<>();
+	private String body = "";
+
+	/** Gets the value of the given header, or null if absent. */
+	public String get(final String key) {
+		return headers.get(key);
+	}
+
+	/** Sets the value of the given header. */
+	public DaemonRequest set(final String key, final String value) {
+		headers.put(key, value);
+		return this;
+	}
+
+	public String getBody() {
+		return body;
+	}
+
+	public DaemonRequest setBody(final String body) {
+		this.body = body;
+		return this;
+	}
+
+	/** Writes this request in wire format. */
+	public void write(final OutputStream out) throws IOException {
+		final StringBuilder sb = new StringBuilder();
+		for (final Map.Entry<String, String> e : headers.entrySet()) {
+			sb.append(e.getKey()).append(": ").append(e.getValue()).append('\n');
+		}
+		sb.append('\n').append(body);
+		out.write(sb.toString().getBytes(StandardCharsets.UTF_8));
+		out.flush();
+	}
+
+	/** Reads a request in wire format, up to the end of the stream. */
+	public static DaemonRequest read(final InputStream in) throws IOException {
+		final DaemonRequest request = readHeaders(in);
+		request.readBody(in);
+		return request;
+	}
+
+	/**
+	 * Reads the header block of a request, up to and including the empty line
+	 * that ends it, leaving the body unread. Since the stream is read one byte
+	 * at a time, it should be buffered.
+	 *
+	 * @throws IOException if the header block exceeds {@link #MAX_HEADER_SIZE}
+	 *           bytes.
+	 */
+	public static DaemonRequest readHeaders(final InputStream in)
+		throws IOException
+	{
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		int previous = -1;
+		while (true) {
+			final int b = in.read();
+			if (b < 0 || b == '\n' && previous == '\n') break;
+			if (out.size() >= MAX_HEADER_SIZE) {
+				throw new IOException("Headers exceed " + MAX_HEADER_SIZE + " bytes");
+			}
+			out.write(b);
+			previous = b;
+		}
+		final DaemonRequest request = new DaemonRequest();
+		final String head = new String(out.toByteArray(), StandardCharsets.UTF_8);
+		for (final String line : head.split("\n")) {
+			final int colon = line.indexOf(':');
+			if (colon < 0) continue;
+			request.set(line.substring(0, colon).trim(), line.substring(colon + 1)
+				.trim());
+		}
+		return request;
+	}
+
+	/** Reads the body of this request, up to the end of the stream. */
+	public void readBody(final InputStream in) throws IOException {
+		setBody(new String(readFully(in), StandardCharsets.UTF_8));
+	}
+
+	// -- Helper methods --
+
+	static byte[] readFully(final InputStream in) throws IOException {
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		final byte[] buf = new byte[8192];
+		while (true) {
+			final int r = in.read(buf);
+			if (r < 0) break;
+			if (out.size() + r > MAX_SIZE) {
+				throw new IOException("Request exceeds " + MAX_SIZE + " bytes");
+			}
+			out.write(buf, 0, r);
+		}
+		return out.toByteArray();
+	}
+
+}
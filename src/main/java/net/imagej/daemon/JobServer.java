@@ -0,0 +1,504 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2015 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+
+package net.imagej.daemon;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.script.ScriptContext;
+import javax.script.SimpleScriptContext;
+
+import net.imagej.metrics.MetricsService;
+import net.imagej.ops.OpService;
+import net.imagej.script.ScriptCacheService;
+
+import org.scijava.Context;
+import org.scijava.log.LogService;
+import org.scijava.plugin.Parameter;
+import org.scijava.script.ScriptLanguage;
+import org.scijava.script.ScriptService;
+
+/**
+ * Serves script, op and batch jobs against a resident, warmed-up ImageJ
+ * context, so that clients skip JVM startup and context creation.
+ * <p>
+ * The server listens on the loopback interface only. On start it generates a
+ * random access token and writes it, together with its port, to the
+ * owner-readable {@link DaemonClient#getDaemonFile() daemon file}; requests
+ * without that token are refused.
+ * </p>
+ * <p>
+ * The token is checked as soon as the header block has been read, before the
+ * body, and connections that send nothing for {@value #READ_TIMEOUT} ms are
+ * dropped. Connections beyond those the server has threads and queue room for
+ * are closed right away.
+ * </p>
+ * <p>
+ * Each job runs on its own thread with its own op arguments, or its own
+ * script context. A running script has a script engine instance that no other
+ * running job uses, but instances are pooled by the {@link ScriptCacheService}
+ * and reused by later runs of the same script. Variables are bound in the
+ * job's own context, yet state a script leaves in the engine itself, such as
+ * classes it defines, can be seen by later jobs running the same script. What
+ * a script prints is captured and sent back to the client. At most
+ * {@code maxJobs} jobs run at once; further requests wait for a slot up to
+ * their timeout and are then refused as {@code BUSY}. A job exceeding its
+ * timeout is interrupted and reported as {@code TIMEOUT}; its slot stays taken
+ * until the job actually stops.
+ * </p>
+ *
+ * @see DaemonRequest
+ * @see DaemonClient
+ */
+public class JobServer implements Closeable {
+
+	/** Time in milliseconds a client may take to send each part of a request. */
+	public static final int READ_TIMEOUT = 10000;
+
+	/**
+	 * Number of connections, beyond {@code maxJobs}, that may wait for a job
+	 * slot; as many more may wait to be read.
+	 */
+	private static final int MAX_WAITING = 16;
+
+	@Parameter
+	private ScriptService scriptService;
+
+	@Parameter
+	private ScriptCacheService scriptCacheService;
+
+	@Parameter(required = false)
+	private OpService opService;
+
+	@Parameter(required = false)
+	private MetricsService metricsService;
+
+	@Parameter
+	private LogService log;
+
+	private final int requestedPort;
+	private final long defaultTimeout;
+	private final Semaphore slots;
+	private final ExecutorService connections;
+	private final ExecutorService jobs;
+	private final CountDownLatch stopped = new CountDownLatch(1);
+
+	private ServerSocket serverSocket;
+	private byte[] token;
+
+	/**
+	 * Creates a job server for the given context.
+	 *
+	 * @param context The context to run jobs against.
+	 * @param port Port to listen on, or 0 for any free port.
+	 * @param maxJobs Maximum number of jobs running concurrently.
+	 * @param defaultTimeout Timeout in milliseconds of jobs which specify none.
+	 */
+	public JobServer(final Context context, final int port, final int maxJobs,
+		final long defaultTimeout)
+	{
+		context.inject(this);
+		requestedPort = port;
+		this.defaultTimeout = defaultTimeout;
+		slots = new Semaphore(maxJobs, true);
+		final int connectionThreads = maxJobs + MAX_WAITING;
+		final ThreadPoolExecutor pool = new ThreadPoolExecutor(connectionThreads,
+			connectionThreads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(
+				MAX_WAITING), threadFactory("connection"));
+		pool.allowCoreThreadTimeOut(true);
+		connections = pool;
+		jobs = Executors.newFixedThreadPool(maxJobs, threadFactory("job"));
+	}
+
+	/**
+	 * Starts listening for jobs and publishes the daemon file.
+	 *
+	 * @return The port listened on.
+	 */
+	public synchronized int start() throws IOException {
+		if (serverSocket != null) return serverSocket.getLocalPort();
+		serverSocket = new ServerSocket(requestedPort, 50, InetAddress
+			.getLoopbackAddress());
+		token = generateToken();
+		writeDaemonFile(serverSocket.getLocalPort());
+		final Thread acceptor = threadFactory("acceptor").newThread(
+			this::acceptLoop);
+		acceptor.start();
+		return serverSocket.getLocalPort();
+	}
+
+	/** Blocks until the server has been closed. */
+	public void awaitShutdown() throws InterruptedException {
+		stopped.await();
+	}
+
+	// -- Closeable methods --
+
+	@Override
+	public synchronized void close() {
+		if (stopped.getCount() == 0) return;
+		try {
+			if (serverSocket != null) serverSocket.close();
+		}
+		catch (final IOException exc) {
+			log.debug(exc);
+		}
+		connections.shutdownNow();
+		jobs.shutdownNow();
+		deleteDaemonFile();
+		stopped.countDown();
+	}
+
+	// -- Helper methods --
+
+	private void acceptLoop() {
+		while (!serverSocket.isClosed()) {
+			try {
+				final Socket socket = serverSocket.accept();
+				try {
+					connections.execute(() -> serve(socket));
+				}
+				catch (final RejectedExecutionException exc) {
+					// NB: Too many connections, or shutting down.
+					socket.close();
+				}
+			}
+			catch (final IOException exc) {
+				if (!serverSocket.isClosed()) log.error(exc);
+			}
+		}
+	}
+
+	private void serve(final Socket socket) {
+		try (final Socket s = socket) {
+			s.setSoTimeout(READ_TIMEOUT);
+			final InputStream in = new BufferedInputStream(s.getInputStream());
+			final DaemonRequest request = DaemonRequest.readHeaders(in);
+			final OutputStream out = s.getOutputStream();
+			if (!isAuthorized(request)) {
+				out.write("DENIED\n".getBytes(StandardCharsets.UTF_8));
+				s.shutdownOutput();
+				// NB: Closing with unread input resets the connection, which may
+				// discard the response; skip a bounded amount of the body first.
+				in.skip(DaemonRequest.MAX_HEADER_SIZE);
+				return;
+			}
+			request.readBody(in);
+			final String response = respond(request);
+			out.write(response.getBytes(StandardCharsets.UTF_8));
+			out.flush();
+		}
+		catch (final IOException exc) {
+			log.debug(exc);
+		}
+	}
+
+	private boolean isAuthorized(final DaemonRequest request) {
+		final String t = request.get("token");
+		return t != null && MessageDigest.isEqual(token, t.getBytes(
+			StandardCharsets.UTF_8));
+	}
+
+	private String respond(final DaemonRequest request) {
+		if ("shutdown".equals(request.get("type"))) {
+			new Thread(this::close, "ImageJ-daemon-shutdown").start();
+			return DaemonClient.OK + "\n";
+		}
+
+		final long timeout;
+		try {
+			timeout = request.get("timeout") == null ? defaultTimeout : //
+				Long.parseLong(request.get("timeout"));
+		}
+		catch (final NumberFormatException exc) {
+			return "ERROR\nInvalid timeout: " + request.get("timeout");
+		}
+		final long start = System.nanoTime();
+		try {
+			if (!slots.tryAcquire(timeout, TimeUnit.MILLISECONDS)) return "BUSY\n";
+		}
+		catch (final InterruptedException exc) {
+			Thread.currentThread().interrupt();
+			return "BUSY\n";
+		}
+
+		// NB: The slot is released by whoever claims the job: the job itself
+		// once its work has actually stopped, or this thread if the job is
+		// canceled before it starts. A job that ignores interruption keeps its
+		// slot, so runaway jobs cannot push the server past maxJobs.
+		final AtomicBoolean claimed = new AtomicBoolean();
+		final Future<String> job;
+		try {
+			job = jobs.submit(() -> {
+				if (!claimed.compareAndSet(false, true)) return null;
+				try {
+					return execute(request);
+				}
+				finally {
+					slots.release();
+				}
+			});
+		}
+		catch (final RejectedExecutionException exc) {
+			slots.release();
+			return "ERROR\nShutting down";
+		}
+		try {
+			final long remaining =
+				timeout - TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+			return DaemonClient.OK + "\n" + job.get(Math.max(0, remaining),
+				TimeUnit.MILLISECONDS);
+		}
+		catch (final TimeoutException exc) {
+			cancel(job, claimed);
+			return "TIMEOUT\n";
+		}
+		catch (final ExecutionException exc) {
+			final Throwable cause = exc.getCause();
+			log.debug(cause);
+			return "ERROR\n" + cause;
+		}
+		catch (final InterruptedException exc) {
+			cancel(job, claimed);
+			Thread.currentThread().interrupt();
+			return "ERROR\nInterrupted";
+		}
+		finally {
+			if (metricsService != null) {
+				metricsService.timer("daemon.job").recordSince(start);
+			}
+		}
+	}
+
+	/** Interrupts the given job, releasing its slot if it never started. */
+	private void cancel(final Future<?> job, final AtomicBoolean claimed) {
+		job.cancel(true);
+		if (claimed.compareAndSet(false, true)) slots.release();
+	}
+
+	/**
+	 * Runs one job and returns its textual output. For scripts, that is what
+	 * the script printed to its writer, then to its error writer, then its
+	 * value if it has one.
+	 */
+	private String execute(final DaemonRequest request) throws Exception {
+		final String type = request.get("type");
+		final Map<String, Object> inputs = parseInputs(request.get("inputs"));
+		final StringWriter out = new StringWriter();
+		final StringWriter err = new StringWriter();
+		if ("script".equals(type)) {
+			final String lang = request.get("language");
+			ScriptLanguage language = scriptService.getLanguageByExtension(lang);
+			if (language == null) language = scriptService.getLanguageByName(lang);
+			if (language == null) {
+				throw new IllegalArgumentException("Unknown language: " + lang);
+			}
+			final ScriptContext context = scriptContext(out, err);
+			context.getBindings(ScriptContext.ENGINE_SCOPE).putAll(inputs);
+			final Object value =
+				scriptCacheService.run(language, request.getBody(), context);
+			return output(out, err, value);
+		}
+		if ("batch".equals(type)) {
+			final StringBuilder sb = new StringBuilder();
+			for (final String path : lines(request.getBody())) {
+				final Object value = scriptCacheService.run(new File(path), inputs,
+					scriptContext(out, err));
+				sb.append(output(out, err, value));
+				out.getBuffer().setLength(0);
+				err.getBuffer().setLength(0);
+			}
+			return sb.toString();
+		}
+		if ("op".equals(type)) {
+			if (opService == null) throw new IllegalStateException("No OpService");
+			final List<String> lines = lines(request.getBody());
+			if (lines.isEmpty()) throw new IllegalArgumentException("No op name");
+			final Object[] args = new Object[lines.size() - 1];
+			for (int i = 0; i < args.length; i++) {
+				args[i] = parseValue(lines.get(i + 1));
+			}
+			return "" + opService.run(lines.get(0), args);
+		}
+		throw new IllegalArgumentException("Unknown job type: " + type);
+	}
+
+	/** Creates a script context of its own for one script of a job. */
+	private static ScriptContext scriptContext(final StringWriter out,
+		final StringWriter err)
+	{
+		final ScriptContext context = new SimpleScriptContext();
+		context.setWriter(new PrintWriter(out, true));
+		context.setErrorWriter(new PrintWriter(err, true));
+		return context;
+	}
+
+	private static String output(final StringWriter out, final StringWriter err,
+		final Object value)
+	{
+		final StringBuilder sb = new StringBuilder();
+		sb.append(out).append(err);
+		if (value != null) sb.append(value).append('\n');
+		return sb.toString();
+	}
+
+	private void writeDaemonFile(final int port) throws IOException {
+		final File file = DaemonClient.getDaemonFile();
+		final File dir = file.getParentFile();
+		if (dir != null && !dir.isDirectory() && !dir.mkdirs()) {
+			throw new IOException("Cannot create " + dir);
+		}
+		// NB: Restrict access before the token is written.
+		if (!file.exists() && !file.createNewFile()) {
+			throw new IOException("Cannot create " + file);
+		}
+		file.setReadable(false, false);
+		file.setReadable(true, true);
+		file.setWritable(false, false);
+		file.setWritable(true, true);
+		final Properties info = new Properties();
+		info.setProperty("port", "" + port);
+		info.setProperty("token", new String(token, StandardCharsets.UTF_8));
+		try (final OutputStream out = new FileOutputStream(file)) {
+			info.store(out, "ImageJ daemon");
+		}
+	}
+
+	/** Deletes the daemon file, unless another server has replaced it. */
+	private void deleteDaemonFile() {
+		if (token == null) return; // never started
+		final File daemonFile = DaemonClient.getDaemonFile();
+		try {
+			final String t = DaemonClient.readDaemonFile().getProperty("token");
+			if (t == null || !MessageDigest.isEqual(token, t.getBytes(
+				StandardCharsets.UTF_8)))
+			{
+				return;
+			}
+		}
+		catch (final IOException exc) {
+			log.debug(exc);
+			return;
+		}
+		if (!daemonFile.delete()) log.warn("Cannot delete " + daemonFile);
+	}
+
+	private static byte[] generateToken() {
+		final byte[] bytes = new byte[16];
+		new SecureRandom().nextBytes(bytes);
+		final StringBuilder sb = new StringBuilder();
+		for (final byte b : bytes) {
+			sb.append(String.format("%02x", b));
+		}
+		return sb.toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	private static Map<String, Object> parseInputs(final String inputs) {
+		final Map<String, Object> map = new HashMap<>();
+		if (inputs == null) return map;
+		for (final String pair : inputs.split(",")) {
+			final int equals = pair.indexOf('=');
+			if (equals < 0) continue;
+			map.put(pair.substring(0, equals).trim(), pair.substring(equals + 1)
+				.trim());
+		}
+		return map;
+	}
+
+	private static List<String> lines(final String text) {
+		final List<String> lines = new ArrayList<>();
+		for (final String line : text.split("\n")) {
+			if (!line.trim().isEmpty()) lines.add(line.trim());
+		}
+		return lines;
+	}
+
+	/** Parses an op argument as a number if possible, else keeps the string. */
+	private static Object parseValue(final String s) {
+		try {
+			return Integer.valueOf(s);
+		}
+		catch (final NumberFormatException exc) {
+			// not an integer
+		}
+		try {
+			return Double.valueOf(s);
+		}
+		catch (final NumberFormatException exc) {
+			return s;
+		}
+	}
+
+	private static ThreadFactory threadFactory(final String role) {
+		final AtomicInteger count = new AtomicInteger();
+		return r -> {
+			final Thread t = new Thread(r, "ImageJ-daemon-" + role + "-" + count
+				.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		};
+	}
+
+}
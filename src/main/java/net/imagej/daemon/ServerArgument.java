@@ -0,0 +1,101 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2015 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+
+package net.imagej.daemon;
+
+import java.io.IOException;
+import java.util.LinkedList;
+
+import org.scijava.console.AbstractConsoleArgument;
+import org.scijava.console.ConsoleArgument;
+import org.scijava.log.LogService;
+import org.scijava.plugin.Parameter;
+import org.scijava.plugin.Plugin;
+
+/**
+ * Handles the {@code --server [port]} command line argument, which keeps
+ * ImageJ resident as a {@link JobServer} until a client sends
+ * {@code shutdown}.
+ * <p>
+ * The number of concurrent jobs defaults to the number of processors and can
+ * be set with the {@code imagej.daemon.maxJobs} system property; the default
+ * job timeout is 60 seconds, set with {@code imagej.daemon.timeout} (in
+ * milliseconds).
+ * </p>
+ *
+ * @see DaemonClient
+ */
+@Plugin(type = ConsoleArgument.class)
+public class ServerArgument extends AbstractConsoleArgument {
+
+	private static final String FLAG = "--server";
+
+	@Parameter
+	private LogService log;
+
+	// -- ConsoleArgument methods --
+
+	@Override
+	public void handle(final LinkedList<String> args) {
+		if (!supports(args)) return;
+
+		args.removeFirst(); // --server
+		int port = 0;
+		if (!args.isEmpty() && args.getFirst().matches("\\d+")) {
+			port = Integer.parseInt(args.removeFirst());
+		}
+		final int maxJobs = Integer.getInteger("imagej.daemon.maxJobs", Runtime
+			.getRuntime().availableProcessors());
+		final long timeout = Long.getLong("imagej.daemon.timeout", 60000);
+
+		try (final JobServer server = new JobServer(getContext(), port, maxJobs,
+			timeout))
+		{
+			log.info("ImageJ daemon listening on port " + server.start());
+			server.awaitShutdown();
+		}
+		catch (final IOException exc) {
+			log.error(exc);
+		}
+		catch (final InterruptedException exc) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	// -- Typed methods --
+
+	@Override
+	public boolean supports(final LinkedList<String> args) {
+		return !args.isEmpty() && FLAG.equals(args.getFirst());
+	}
+
+}
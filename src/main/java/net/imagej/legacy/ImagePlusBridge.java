@@ -0,0 +1,349 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2015 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+
+package net.imagej.legacy;
+
+import ij.ImagePlus;
+import ij.ImageStack;
+import ij.VirtualStack;
+import ij.measure.Calibration;
+import ij.process.ByteProcessor;
+import ij.process.FloatProcessor;
+import ij.process.ImageProcessor;
+import ij.process.ShortProcessor;
+
+import net.imagej.Dataset;
+import net.imagej.DatasetService;
+import net.imagej.ImgPlus;
+import net.imagej.axis.Axes;
+import net.imagej.axis.AxisType;
+import net.imglib2.RandomAccess;
+import net.imglib2.img.ImagePlusAdapter;
+import net.imglib2.img.Img;
+import net.imglib2.img.planar.PlanarImg;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+import net.imglib2.type.numeric.real.FloatType;
+
+/**
+ * Moves images between ImageJ 1.x and {@link Dataset}s without copying pixel
+ * arrays where possible.
+ * <p>
+ * An {@link ImagePlus} of 8-bit, 16-bit or 32-bit type is wrapped as a
+ * {@link Dataset} backed by the very same slice arrays. In the other direction,
+ * a planar {@link Dataset} of one of those types whose non-XY axes appear in
+ * ImageJ 1.x order (channel, Z, time) becomes an {@link ImagePlus} whose stack
+ * holds the dataset's own planes. Changes made through either object are
+ * visible in the other.
+ * </p>
+ * <p>
+ * Any other dataset layout cannot be shared. It is exposed as a virtual stack
+ * in ImageJ 1.x's XYCZT order instead, whatever the dataset's axis order.
+ * Each plane is converted when ImageJ 1.x first asks for it and then kept, so
+ * edits made in ImageJ 1.x persist in that copy. ImageJ 1.x gives no notice
+ * of writes, so the first access counts as the write of copy-on-write. The
+ * dataset itself is left unchanged.
+ * </p>
+ * <p>
+ * This class requires ImageJ 1.x and ImgLib2-IJ on the class path, as provided
+ * by the legacy layer.
+ * </p>
+ */
+public final class ImagePlusBridge {
+
+	private ImagePlusBridge() {
+		// prevent instantiation of utility class
+	}
+
+	/**
+	 * Wraps the given {@link ImagePlus} as a {@link Dataset} sharing its pixel
+	 * arrays.
+	 *
+	 * @throws IllegalArgumentException if the image is RGB, which has no
+	 *           array-compatible {@link RealType} counterpart.
+	 */
+	public static Dataset wrap(final DatasetService datasetService,
+		final ImagePlus imp)
+	{
+		if (imp.getType() == ImagePlus.COLOR_RGB) {
+			throw new IllegalArgumentException(
+				"RGB images cannot be shared: " + imp.getTitle());
+		}
+		@SuppressWarnings({ "rawtypes", "unchecked" })
+		final Dataset dataset =
+			datasetService.create((ImgPlus) ImagePlusAdapter.wrapImgPlus(imp));
+		return dataset;
+	}
+
+	/**
+	 * Wraps the given {@link Dataset} as an {@link ImagePlus}, sharing its
+	 * planes if {@link #isShareable possible} and falling back to a
+	 * copy-on-write virtual stack otherwise.
+	 * <p>
+	 * The virtual stack copies each plane out of the dataset when ImageJ 1.x
+	 * first reads it, and keeps the copy so that edits are not lost. Merely
+	 * browsing through such a stack therefore copies every visited plane into
+	 * memory, up to the size of the whole dataset; very large datasets should
+	 * be converted to a shareable layout instead.
+	 * </p>
+	 *
+	 * @throws IllegalArgumentException if the dataset lacks an X or Y axis, has
+	 *           an axis of size greater than one that ImageJ 1.x cannot
+	 *           represent, or has planes or a plane count too large for ImageJ
+	 *           1.x.
+	 */
+	public static ImagePlus wrap(final Dataset dataset) {
+		final ImagePlus imp = isShareable(dataset) ? share(dataset) : copyOnWrite(
+			dataset);
+		final ImgPlus<? extends RealType<?>> imgPlus = dataset.getImgPlus();
+		final Calibration cal = imp.getCalibration();
+		cal.pixelWidth = imgPlus.averageScale(imgPlus.dimensionIndex(Axes.X));
+		cal.pixelHeight = imgPlus.averageScale(imgPlus.dimensionIndex(Axes.Y));
+		return imp;
+	}
+
+	/**
+	 * Gets whether the pixel arrays of the given dataset can be handed to
+	 * ImageJ 1.x as they are.
+	 */
+	public static boolean isShareable(final Dataset dataset) {
+		final ImgPlus<? extends RealType<?>> imgPlus = dataset.getImgPlus();
+		if (!(imgPlus.getImg() instanceof PlanarImg)) return false;
+
+		final RealType<?> type = dataset.getType();
+		if (!(type instanceof UnsignedByteType) &&
+			!(type instanceof UnsignedShortType) && !(type instanceof FloatType))
+		{
+			return false;
+		}
+
+		if (imgPlus.numDimensions() < 2) return false;
+		if (imgPlus.axis(0).type() != Axes.X) return false;
+		if (imgPlus.axis(1).type() != Axes.Y) return false;
+		if (imgPlus.dimension(0) * imgPlus.dimension(1) > Integer.MAX_VALUE) {
+			return false;
+		}
+		int last = -1;
+		for (int d = 2; d < imgPlus.numDimensions(); d++) {
+			final int index = stackIndex(imgPlus.axis(d).type());
+			if (index < 0 || index <= last) return false;
+			last = index;
+		}
+		return true;
+	}
+
+	// -- Helper methods --
+
+	private static ImagePlus share(final Dataset dataset) {
+		final ImgPlus<? extends RealType<?>> imgPlus = dataset.getImgPlus();
+		final Img<? extends RealType<?>> img = imgPlus.getImg();
+		final PlanarImg<?, ?> planar = (PlanarImg<?, ?>) img;
+
+		final ImageStack stack = new ImageStack((int) imgPlus.dimension(0),
+			(int) imgPlus.dimension(1));
+		for (int i = 0; i < planar.numSlices(); i++) {
+			stack.addSlice(null, planar.getPlane(i).getCurrentStorageArray());
+		}
+
+		final int[] czt = { 1, 1, 1 };
+		for (int d = 2; d < imgPlus.numDimensions(); d++) {
+			czt[stackIndex(imgPlus.axis(d).type())] = (int) imgPlus.dimension(d);
+		}
+		return image(dataset.getName(), stack, czt);
+	}
+
+	private static ImagePlus copyOnWrite(final Dataset dataset) {
+		final ImgPlus<? extends RealType<?>> imgPlus = dataset.getImgPlus();
+		// NB: Dimension index of each of X, Y, C, Z and T, or -1 if absent.
+		final int[] xyczt = { -1, -1, -1, -1, -1 };
+		for (int d = 0; d < imgPlus.numDimensions(); d++) {
+			final AxisType axisType = imgPlus.axis(d).type();
+			final int stackIndex = stackIndex(axisType);
+			final int index = axisType == Axes.X ? 0 : axisType == Axes.Y ? 1 : //
+				stackIndex < 0 ? -1 : stackIndex + 2;
+			if (index >= 0 && xyczt[index] < 0) xyczt[index] = d;
+			else if (imgPlus.dimension(d) > 1) {
+				throw new IllegalArgumentException("Unsupported axis: " + axisType);
+			}
+		}
+		if (xyczt[0] < 0 || xyczt[1] < 0) {
+			throw new IllegalArgumentException("Dataset has no X and Y axes: " +
+				dataset.getName());
+		}
+		// NB: ImageJ 1.x indexes both plane pixels and stack slices with ints.
+		if (imgPlus.dimension(xyczt[0]) * imgPlus.dimension(
+			xyczt[1]) > Integer.MAX_VALUE)
+		{
+			throw new IllegalArgumentException("Planes too large for ImageJ 1.x: " +
+				dataset.getName());
+		}
+		final int[] czt = new int[3];
+		long planeCount = 1;
+		for (int i = 0; i < 3; i++) {
+			final long size = xyczt[i + 2] < 0 ? 1 : imgPlus.dimension(xyczt[i + 2]);
+			planeCount *= size;
+			if (planeCount > Integer.MAX_VALUE) {
+				throw new IllegalArgumentException(
+					"Too many planes for ImageJ 1.x: " + dataset.getName());
+			}
+			czt[i] = (int) size;
+		}
+		return image(dataset.getName(), new CopyOnWriteStack(imgPlus, xyczt, czt),
+			czt);
+	}
+
+	private static ImagePlus image(final String title, final ImageStack stack,
+		final int[] czt)
+	{
+		final ImagePlus imp = new ImagePlus(title, stack);
+		imp.setDimensions(czt[0], czt[1], czt[2]);
+		if (imp.getNChannels() > 1 || imp.getNFrames() > 1) {
+			imp.setOpenAsHyperStack(true);
+		}
+		return imp;
+	}
+
+	/**
+	 * Gets the position of the given axis in ImageJ 1.x's CZT order, or -1 if
+	 * ImageJ 1.x has no such axis.
+	 */
+	private static int stackIndex(final AxisType axisType) {
+		if (axisType == Axes.CHANNEL) return 0;
+		if (axisType == Axes.Z) return 1;
+		if (axisType == Axes.TIME) return 2;
+		return -1;
+	}
+
+	// -- Helper classes --
+
+	/**
+	 * A virtual stack over a dataset in any axis order, presenting its planes in
+	 * XYCZT order. Each plane is converted when first requested and then kept,
+	 * so that edits made through ImageJ 1.x are not lost.
+	 */
+	private static class CopyOnWriteStack extends VirtualStack {
+
+		private final ImgPlus<? extends RealType<?>> imgPlus;
+		private final int[] xyczt;
+		private final int[] czt;
+		private final int bitDepth;
+		private final Object[] planes;
+
+		public CopyOnWriteStack(final ImgPlus<? extends RealType<?>> imgPlus,
+			final int[] xyczt, final int[] czt)
+		{
+			super((int) imgPlus.dimension(xyczt[0]), (int) imgPlus.dimension(
+				xyczt[1]), null, null);
+			this.imgPlus = imgPlus;
+			this.xyczt = xyczt;
+			this.czt = czt;
+			final RealType<?> type = imgPlus.firstElement();
+			bitDepth = type instanceof UnsignedByteType ? 8 : //
+				type instanceof UnsignedShortType ? 16 : 32;
+			planes = new Object[czt[0] * czt[1] * czt[2]];
+		}
+
+		@Override
+		public ImageProcessor getProcessor(final int n) {
+			final Object pixels = getPixels(n);
+			final int w = getWidth(), h = getHeight();
+			if (bitDepth == 8) return new ByteProcessor(w, h, (byte[]) pixels);
+			if (bitDepth == 16) {
+				return new ShortProcessor(w, h, (short[]) pixels, null);
+			}
+			return new FloatProcessor(w, h, (float[]) pixels);
+		}
+
+		@Override
+		public synchronized Object getPixels(final int n) {
+			if (planes[n - 1] == null) planes[n - 1] = convert(n - 1);
+			return planes[n - 1];
+		}
+
+		@Override
+		public synchronized void setPixels(final Object pixels, final int n) {
+			planes[n - 1] = pixels;
+		}
+
+		@Override
+		public int getSize() {
+			return planes.length;
+		}
+
+		@Override
+		public String getSliceLabel(final int n) {
+			return null;
+		}
+
+		@Override
+		public int getBitDepth() {
+			return bitDepth;
+		}
+
+		/** Copies the given plane, numbered in CZT order, out of the dataset. */
+		private Object convert(final int index) {
+			final int w = getWidth(), h = getHeight();
+			final long[] pos = new long[imgPlus.numDimensions()];
+			imgPlus.min(pos);
+			final int[] plane = { index % czt[0], index / czt[0] % czt[1], //
+				index / czt[0] / czt[1] };
+			for (int i = 0; i < 3; i++) {
+				final int d = xyczt[i + 2];
+				if (d >= 0) pos[d] += plane[i];
+			}
+			final Object pixels = bitDepth == 8 ? new byte[w * h] : //
+				bitDepth == 16 ? new short[w * h] : new float[w * h];
+			final RandomAccess<? extends RealType<?>> ra = imgPlus.randomAccess();
+			ra.setPosition(pos);
+			final int dx = xyczt[0], dy = xyczt[1];
+			for (int y = 0; y < h; y++) {
+				ra.setPosition(imgPlus.min(dy) + y, dy);
+				ra.setPosition(imgPlus.min(dx), dx);
+				for (int x = 0; x < w; x++) {
+					final RealType<?> t = ra.get();
+					final int i = y * w + x;
+					if (bitDepth == 8) {
+						((byte[]) pixels)[i] = (byte) ((UnsignedByteType) t).get();
+					}
+					else if (bitDepth == 16) {
+						((short[]) pixels)[i] = (short) ((UnsignedShortType) t).get();
+					}
+					else ((float[]) pixels)[i] = t.getRealFloat();
+					ra.fwd(dx);
+				}
+			}
+			return pixels;
+		}
+	}
+
+}
@@ -0,0 +1,146 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2015 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+
+package net.imagej.measure;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Future;
+
+import net.imagej.util.Parallel;
+import net.imglib2.Cursor;
+import net.imglib2.Interval;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.type.numeric.IntegerType;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.view.Views;
+
+import org.scijava.plugin.Parameter;
+import org.scijava.plugin.Plugin;
+import org.scijava.service.AbstractService;
+import org.scijava.service.Service;
+import org.scijava.thread.ThreadService;
+
+/**
+ * Default implementation of {@link StreamingStatisticsService}.
+ */
+@Plugin(type = Service.class)
+public class DefaultStreamingStatisticsService extends AbstractService
+	implements StreamingStatisticsService
+{
+
+	@Parameter
+	private ThreadService threadService;
+
+	// -- StreamingStatisticsService methods --
+
+	@Override
+	public StatisticsAccumulator statistics(
+		final RandomAccessibleInterval<? extends RealType<?>> img)
+	{
+		final List<Future<StatisticsAccumulator>> futures = new ArrayList<>();
+		for (final Interval slab : Parallel.slabs(img)) {
+			futures.add(threadService.run(() -> {
+				final StatisticsAccumulator stats = new StatisticsAccumulator();
+				final Cursor<? extends RealType<?>> c = //
+					Views.flatIterable(Views.interval(img, slab)).cursor();
+				while (c.hasNext()) {
+					stats.add(c.next().getRealDouble());
+				}
+				return stats;
+			}));
+		}
+		final StatisticsAccumulator result = new StatisticsAccumulator();
+		for (final Future<StatisticsAccumulator> future : futures) {
+			result.merge(Parallel.get(future));
+		}
+		return result;
+	}
+
+	@Override
+	public List<StatisticsAccumulator> statistics(
+		final RandomAccessibleInterval<? extends RealType<?>> img,
+		final RandomAccessibleInterval<? extends IntegerType<?>> labels,
+		final int regionCount)
+	{
+		checkBounds(img, labels);
+		final List<Future<StatisticsAccumulator[]>> futures = new ArrayList<>();
+		for (final Interval slab : Parallel.slabs(img)) {
+			futures.add(threadService.run(() -> {
+				final StatisticsAccumulator[] stats = create(regionCount);
+				final Cursor<? extends RealType<?>> c = //
+					Views.flatIterable(Views.interval(img, slab)).cursor();
+				final Cursor<? extends IntegerType<?>> l = //
+					Views.flatIterable(Views.interval(labels, slab)).cursor();
+				while (c.hasNext()) {
+					final double value = c.next().getRealDouble();
+					final long label = l.next().getIntegerLong();
+					if (label > 0 && label <= regionCount) {
+						stats[(int) label - 1].add(value);
+					}
+				}
+				return stats;
+			}));
+		}
+		final StatisticsAccumulator[] result = create(regionCount);
+		for (final Future<StatisticsAccumulator[]> future : futures) {
+			final StatisticsAccumulator[] partial = Parallel.get(future);
+			for (int i = 0; i < regionCount; i++) {
+				result[i].merge(partial[i]);
+			}
+		}
+		return Arrays.asList(result);
+	}
+
+	// -- Helper methods --
+
+	private static void checkBounds(final Interval img, final Interval labels) {
+		boolean same = img.numDimensions() == labels.numDimensions();
+		for (int d = 0; same && d < img.numDimensions(); d++) {
+			same = img.min(d) == labels.min(d) && img.max(d) == labels.max(d);
+		}
+		if (!same) {
+			throw new IllegalArgumentException(
+				"Label image bounds do not match the image");
+		}
+	}
+
+	private static StatisticsAccumulator[] create(final int count) {
+		final StatisticsAccumulator[] stats = new StatisticsAccumulator[count];
+		for (int i = 0; i < count; i++) {
+			stats[i] = new StatisticsAccumulator();
+		}
+		return stats;
+	}
+
+}
@@ -0,0 +1,133 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2015 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+
+package net.imagej.measure;
+
+/**
+ * Single-pass accumulator of descriptive statistics.
+ * <p>
+ * Values are folded in with Welford's numerically stable update, and two
+ * accumulators can be {@link #merge merged} (Chan et al.), so that partial
+ * statistics of disjoint regions computed on different threads combine into
+ * the statistics of their union.
+ * </p>
+ * <p>
+ * Instances are not thread-safe; give each thread its own accumulator and
+ * merge them at the end.
+ * </p>
+ */
+public class StatisticsAccumulator {
+
+	private long count;
+	private double mean;
+	private double m2;
+	private double sum;
+	private double min = Double.POSITIVE_INFINITY;
+	private double max = Double.NEGATIVE_INFINITY;
+
+	/** Folds the given value into the statistics. */
+	public void add(final double value) {
+		count++;
+		final double delta = value - mean;
+		mean += delta / count;
+		m2 += delta * (value - mean);
+		sum += value;
+		if (value < min) min = value;
+		if (value > max) max = value;
+	}
+
+	/** Folds the statistics of another accumulator into this one. */
+	public void merge(final StatisticsAccumulator other) {
+		if (other.count == 0) return;
+		if (count == 0) {
+			count = other.count;
+			mean = other.mean;
+			m2 = other.m2;
+			sum = other.sum;
+			min = other.min;
+			max = other.max;
+			return;
+		}
+		final long n = count + other.count;
+		final double delta = other.mean - mean;
+		mean += delta * other.count / n;
+		m2 += other.m2 + delta * delta * count * other.count / n;
+		count = n;
+		sum += other.sum;
+		if (other.min < min) min = other.min;
+		if (other.max > max) max = other.max;
+	}
+
+	/** Gets the number of values seen. */
+	public long getCount() {
+		return count;
+	}
+
+	/** Gets the sum of the values seen. */
+	public double getSum() {
+		return sum;
+	}
+
+	/** Gets the arithmetic mean, or NaN if no values were seen. */
+	public double getMean() {
+		return count == 0 ? Double.NaN : mean;
+	}
+
+	/** Gets the unbiased sample variance, or NaN if fewer than two values. */
+	public double getVariance() {
+		return count < 2 ? Double.NaN : m2 / (count - 1);
+	}
+
+	/** Gets the unbiased sample standard deviation. */
+	public double getStdDev() {
+		return Math.sqrt(getVariance());
+	}
+
+	/** Gets the minimum value, or NaN if no values were seen. */
+	public double getMin() {
+		return count == 0 ? Double.NaN : min;
+	}
+
+	/** Gets the maximum value, or NaN if no values were seen. */
+	public double getMax() {
+		return count == 0 ? Double.NaN : max;
+	}
+
+	// -- Object methods --
+
+	@Override
+	public String toString() {
+		return "count=" + getCount() + ", mean=" + getMean() + ", stdDev=" +
+			getStdDev() + ", min=" + getMin() + ", max=" + getMax();
+	}
+
+}
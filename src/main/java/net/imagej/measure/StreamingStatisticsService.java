@@ -0,0 +1,74 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2015 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+
+package net.imagej.measure;
+
+import java.util.List;
+
+import net.imagej.ImageJService;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.type.numeric.IntegerType;
+import net.imglib2.type.numeric.RealType;
+
+/**
+ * Interface for services that compute descriptive statistics in a single,
+ * parallel sweep over the pixels.
+ * <p>
+ * Unlike {@link StatisticsService}, which visits the data once per statistic,
+ * this service gathers count, sum, mean, variance, minimum and maximum
+ * together into a {@link StatisticsAccumulator}. The image is split into slabs
+ * which are measured concurrently and merged afterwards.
+ * </p>
+ */
+public interface StreamingStatisticsService extends ImageJService {
+
+	/** Measures all pixels of the given image. */
+	StatisticsAccumulator statistics(
+		RandomAccessibleInterval<? extends RealType<?>> img);
+
+	/**
+	 * Measures many regions of the given image in one sweep.
+	 *
+	 * @param img The image to measure.
+	 * @param labels Label image of the same bounds as {@code img}; a pixel with
+	 *          label {@code i > 0} belongs to region {@code i}, and label 0 (or
+	 *          any label greater than {@code regionCount}) is ignored.
+	 * @param regionCount Number of regions.
+	 * @return List of {@code regionCount} accumulators, where element
+	 *         {@code i - 1} holds the statistics of region {@code i}.
+	 */
+	List<StatisticsAccumulator> statistics(
+		RandomAccessibleInterval<? extends RealType<?>> img,
+		RandomAccessibleInterval<? extends IntegerType<?>> labels,
+		int regionCount);
+
+}
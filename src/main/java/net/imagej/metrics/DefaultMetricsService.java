@@ -0,0 +1,337 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2015 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+
+package net.imagej.metrics;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.DoubleSupplier;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import net.imagej.Dataset;
+import net.imagej.DatasetService;
+
+import org.scijava.display.event.DisplayUpdatedEvent;
+import org.scijava.event.EventHandler;
+import org.scijava.io.event.DataOpenedEvent;
+import org.scijava.io.event.DataSavedEvent;
+import org.scijava.log.LogService;
+import org.scijava.module.Module;
+import org.scijava.module.event.ModuleCanceledEvent;
+import org.scijava.module.event.ModuleErroredEvent;
+import org.scijava.module.event.ModuleFinishedEvent;
+import org.scijava.module.event.ModuleStartedEvent;
+import org.scijava.plugin.Parameter;
+import org.scijava.plugin.Plugin;
+import org.scijava.service.AbstractService;
+import org.scijava.service.Service;
+
+/**
+ * Default implementation of {@link MetricsService}.
+ */
+@Plugin(type = Service.class)
+public class DefaultMetricsService extends AbstractService implements
+	MetricsService
+{
+
+	@Parameter(required = false)
+	private DatasetService datasetService;
+
+	@Parameter(required = false)
+	private LogService log;
+
+	private final Map<String, Counter> counters = new ConcurrentHashMap<>();
+	private final Map<String, LatencyHistogram> timers =
+		new ConcurrentHashMap<>();
+	private final Map<String, DoubleSupplier> gauges = new ConcurrentHashMap<>();
+
+	/** Start times of running modules. */
+	private final Map<Module, Long> moduleStarts = new ConcurrentHashMap<>();
+
+	private ObjectName objectName;
+	private HttpServer server;
+
+	// -- MetricsService methods --
+
+	@Override
+	public Counter counter(final String name) {
+		// NB: Try a plain lookup first; computeIfAbsent may lock.
+		final Counter counter = counters.get(name);
+		return counter != null ? counter : //
+			counters.computeIfAbsent(sanitize(name), n -> new Counter());
+	}
+
+	@Override
+	public LatencyHistogram timer(final String name) {
+		final LatencyHistogram timer = timers.get(name);
+		return timer != null ? timer : //
+			timers.computeIfAbsent(sanitize(name), n -> new LatencyHistogram());
+	}
+
+	@Override
+	public void gauge(final String name, final DoubleSupplier value) {
+		gauges.put(sanitize(name), value);
+	}
+
+	@Override
+	public Map<String, Number> snapshot() {
+		final Map<String, Number> snapshot = new TreeMap<>();
+		for (final Map.Entry<String, Counter> e : counters.entrySet()) {
+			snapshot.put(e.getKey(), e.getValue().get());
+		}
+		for (final Map.Entry<String, LatencyHistogram> e : timers.entrySet()) {
+			final String name = e.getKey();
+			final LatencyHistogram timer = e.getValue();
+			snapshot.put(name + ".count", timer.getCount());
+			snapshot.put(name + ".total_ms", timer.getTotal());
+			snapshot.put(name + ".mean_ms", timer.getMean());
+			snapshot.put(name + ".p50_ms", timer.getPercentile(0.5));
+			snapshot.put(name + ".p99_ms", timer.getPercentile(0.99));
+			snapshot.put(name + ".max_ms", timer.getMax());
+		}
+		for (final Map.Entry<String, DoubleSupplier> e : gauges.entrySet()) {
+			snapshot.put(e.getKey(), e.getValue().getAsDouble());
+		}
+		for (final Service service : getContext().getServiceIndex().getAll()) {
+			if (!(service instanceof CacheStatistics)) continue;
+			final CacheStatistics stats = (CacheStatistics) service;
+			final String prefix =
+				"cache." + sanitize(service.getClass().getSimpleName());
+			snapshot.put(prefix + ".hits", stats.getHits());
+			snapshot.put(prefix + ".misses", stats.getMisses());
+		}
+		return snapshot;
+	}
+
+	@Override
+	public String toText() {
+		final StringBuilder sb = new StringBuilder();
+		for (final Map.Entry<String, Number> e : snapshot().entrySet()) {
+			sb.append(e.getKey()).append(' ').append(e.getValue()).append('\n');
+		}
+		return sb.toString();
+	}
+
+	@Override
+	public String toJSON() {
+		final StringBuilder sb = new StringBuilder("{");
+		for (final Map.Entry<String, Number> e : snapshot().entrySet()) {
+			if (sb.length() > 1) sb.append(',');
+			sb.append('"').append(escape(e.getKey())).append("\":");
+			final double v = e.getValue().doubleValue();
+			if (Double.isNaN(v) || Double.isInfinite(v)) sb.append("null");
+			else sb.append(e.getValue());
+		}
+		return sb.append('}').toString();
+	}
+
+	@Override
+	public synchronized int startEndpoint(final int port) throws IOException {
+		if (server != null) return server.getAddress().getPort();
+		server = HttpServer.create(new InetSocketAddress(InetAddress
+			.getLoopbackAddress(), port), 0);
+		server.createContext("/metrics", exchange -> respond(exchange,
+			exchange.getRequestURI().getPath().endsWith(".json") ? //
+				"application/json" : "text/plain"));
+		server.start();
+		return server.getAddress().getPort();
+	}
+
+	@Override
+	public synchronized void stopEndpoint() {
+		if (server == null) return;
+		server.stop(0);
+		server = null;
+	}
+
+	// -- Service methods --
+
+	@Override
+	public void initialize() {
+		if (datasetService != null) {
+			gauge("dataset.count", () -> datasetService.getDatasets().size());
+			gauge("dataset.bytes", () -> {
+				long bytes = 0;
+				for (final Dataset dataset : datasetService.getDatasets()) {
+					bytes += dataset.getBytesOfInfo();
+				}
+				return bytes;
+			});
+		}
+		try {
+			final MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+			objectName = new ObjectName("net.imagej:type=Metrics,context=" +
+				Integer.toHexString(System.identityHashCode(getContext())));
+			mbs.registerMBean(new MetricsMBean(this), objectName);
+		}
+		catch (final JMException exc) {
+			objectName = null;
+			if (log != null) log.warn("Cannot register metrics MBean", exc);
+		}
+	}
+
+	// -- Disposable methods --
+
+	@Override
+	public void dispose() {
+		stopEndpoint();
+		if (objectName == null) return;
+		try {
+			ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+		}
+		catch (final JMException exc) {
+			if (log != null) log.debug(exc);
+		}
+	}
+
+	// -- Event handlers --
+
+	@EventHandler
+	protected void onEvent(final ModuleStartedEvent evt) {
+		moduleStarts.put(evt.getModule(), System.nanoTime());
+	}
+
+	@EventHandler
+	protected void onEvent(final ModuleFinishedEvent evt) {
+		final Module module = evt.getModule();
+		final Long start = moduleStarts.remove(module);
+		if (start == null) return;
+		timer("module." + module.getInfo().getTitle()).recordSince(start);
+	}
+
+	@EventHandler
+	protected void onEvent(final ModuleCanceledEvent evt) {
+		moduleStarts.remove(evt.getModule());
+	}
+
+	@EventHandler
+	protected void onEvent(final ModuleErroredEvent evt) {
+		final Module module = evt.getModule();
+		moduleStarts.remove(module);
+		counter("module." + module.getInfo().getTitle() + ".errors").increment();
+	}
+
+	@EventHandler
+	protected void onEvent(final DataOpenedEvent evt) {
+		counter(IO_PREFIX + "opened").increment();
+		countBytes(IO_PREFIX + "opened", evt.getSource(), evt.getData());
+	}
+
+	@EventHandler
+	protected void onEvent(final DataSavedEvent evt) {
+		counter(IO_PREFIX + "saved").increment();
+		countBytes(IO_PREFIX + "saved", evt.getDestination(), evt.getData());
+	}
+
+	@EventHandler
+	protected void onEvent(final DisplayUpdatedEvent evt) {
+		counter("display.updates").increment();
+	}
+
+	// -- Helper methods --
+
+	private void respond(final HttpExchange exchange, final String contentType)
+		throws IOException
+	{
+		final String body = contentType.equals("application/json") ? toJSON()
+			: toText();
+		final byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", contentType +
+			"; charset=utf-8");
+		exchange.sendResponseHeaders(200, bytes.length);
+		try (final OutputStream out = exchange.getResponseBody()) {
+			out.write(bytes);
+		}
+	}
+
+	/**
+	 * Counts the size of an opened or saved file, as {@code <prefix>.file_bytes},
+	 * and of the dataset in memory, as {@code <prefix>.memory_bytes}. The two
+	 * differ for compressed formats.
+	 */
+	private void countBytes(final String prefix, final String location,
+		final Object data)
+	{
+		final File file = location == null ? null : new File(location);
+		if (file != null && file.isFile()) {
+			counter(prefix + ".file_bytes").add(file.length());
+		}
+		if (data instanceof Dataset) {
+			counter(prefix + ".memory_bytes").add(((Dataset) data)
+				.getBytesOfInfo());
+		}
+	}
+
+	/**
+	 * Maps every character of the given name outside {@code [A-Za-z0-9_.]} to
+	 * {@code _}, so that names such as module titles can neither break the
+	 * {@code name value} text format nor need escaping.
+	 */
+	private static String sanitize(final String name) {
+		final char[] chars = name.toCharArray();
+		for (int i = 0; i < chars.length; i++) {
+			final char c = chars[i];
+			if ((c < 'a' || c > 'z') && (c < 'A' || c > 'Z') &&
+				(c < '0' || c > '9') && c != '_' && c != '.')
+			{
+				chars[i] = '_';
+			}
+		}
+		return new String(chars);
+	}
+
+	private static String escape(final String s) {
+		final StringBuilder sb = new StringBuilder(s.length());
+		for (int i = 0; i < s.length(); i++) {
+			final char c = s.charAt(i);
+			if (c == '"' || c == '\\') sb.append('\\').append(c);
+			else if (c < 0x20) sb.append(String.format("\\u%04x", (int) c));
+			else sb.append(c);
+		}
+		return sb.toString();
+	}
+
+}
@@ -0,0 +1,123 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2015 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+
+package net.imagej.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free histogram of durations.
+ * <p>
+ * Durations are counted in buckets whose bounds are powers of two
+ * nanoseconds, so recording costs a few atomic additions, and percentiles are
+ * accurate to within a factor of two.
+ * </p>
+ */
+public class LatencyHistogram {
+
+	private final AtomicLongArray buckets = new AtomicLongArray(64);
+	private final LongAdder count = new LongAdder();
+	private final LongAdder total = new LongAdder();
+	private final AtomicLong max = new AtomicLong();
+
+	/** Records one duration, in nanoseconds. */
+	public void record(final long nanos) {
+		final long n = Math.max(0, nanos);
+		buckets.incrementAndGet(63 - Long.numberOfLeadingZeros(n | 1));
+		count.increment();
+		total.add(n);
+		if (n > max.get()) max.accumulateAndGet(n, Math::max);
+	}
+
+	/** Records the time elapsed since the given {@link System#nanoTime()}. */
+	public void recordSince(final long startNanos) {
+		record(System.nanoTime() - startNanos);
+	}
+
+	/** Gets the number of recorded durations. */
+	public long getCount() {
+		return count.sum();
+	}
+
+	/** Gets the sum of all recorded durations, in milliseconds. */
+	public double getTotal() {
+		return toMillis(total.sum());
+	}
+
+	/** Gets the mean duration in milliseconds, or 0 if none were recorded. */
+	public double getMean() {
+		final long n = count.sum();
+		return n == 0 ? 0 : toMillis(total.sum()) / n;
+	}
+
+	/** Gets the longest recorded duration, in milliseconds. */
+	public double getMax() {
+		return toMillis(max.get());
+	}
+
+	/**
+	 * Gets an upper bound on the given quantile of the recorded durations, in
+	 * milliseconds.
+	 *
+	 * @param quantile Quantile in [0, 1], e.g. 0.99.
+	 */
+	public double getPercentile(final double quantile) {
+		final long[] counts = new long[buckets.length()];
+		long n = 0;
+		for (int b = 0; b < counts.length; b++) {
+			counts[b] = buckets.get(b);
+			n += counts[b];
+		}
+		if (n == 0) return 0;
+		final long rank = (long) Math.ceil(quantile * n);
+		long seen = 0;
+		for (int b = 0; b < counts.length; b++) {
+			seen += counts[b];
+			if (seen >= rank && counts[b] > 0) {
+				// NB: Bucket b holds durations in [2^b, 2^(b+1)).
+				final long upper = b == 63 ? Long.MAX_VALUE : (2L << b) - 1;
+				return Math.min(getMax(), toMillis(upper));
+			}
+		}
+		return getMax();
+	}
+
+	// -- Helper methods --
+
+	private static double toMillis(final long nanos) {
+		return (double) nanos / TimeUnit.MILLISECONDS.toNanos(1);
+	}
+
+}
@@ -0,0 +1,117 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2015 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+
+package net.imagej.metrics;
+
+import java.util.Map;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanException;
+import javax.management.MBeanInfo;
+import javax.management.MBeanNotificationInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.ReflectionException;
+
+/**
+ * Read-only MBean exposing each metric of a {@link MetricsService} as a
+ * {@code double} attribute.
+ */
+class MetricsMBean implements DynamicMBean {
+
+	private final MetricsService metrics;
+
+	public MetricsMBean(final MetricsService metrics) {
+		this.metrics = metrics;
+	}
+
+	// -- DynamicMBean methods --
+
+	@Override
+	public Object getAttribute(final String attribute)
+		throws AttributeNotFoundException
+	{
+		final Number value = metrics.snapshot().get(attribute);
+		if (value == null) throw new AttributeNotFoundException(attribute);
+		return value.doubleValue();
+	}
+
+	@Override
+	public void setAttribute(final Attribute attribute)
+		throws AttributeNotFoundException
+	{
+		throw new AttributeNotFoundException("Read-only attribute: " + attribute
+			.getName());
+	}
+
+	@Override
+	public AttributeList getAttributes(final String[] attributes) {
+		final Map<String, Number> snapshot = metrics.snapshot();
+		final AttributeList list = new AttributeList();
+		for (final String name : attributes) {
+			final Number value = snapshot.get(name);
+			if (value != null) list.add(new Attribute(name, value.doubleValue()));
+		}
+		return list;
+	}
+
+	@Override
+	public AttributeList setAttributes(final AttributeList attributes) {
+		return new AttributeList();
+	}
+
+	@Override
+	public Object invoke(final String actionName, final Object[] params,
+		final String[] signature) throws MBeanException, ReflectionException
+	{
+		throw new ReflectionException(new NoSuchMethodException(actionName));
+	}
+
+	@Override
+	public MBeanInfo getMBeanInfo() {
+		final Map<String, Number> snapshot = metrics.snapshot();
+		final MBeanAttributeInfo[] attributes =
+			new MBeanAttributeInfo[snapshot.size()];
+		int i = 0;
+		for (final String name : snapshot.keySet()) {
+			attributes[i++] = new MBeanAttributeInfo(name, "double", name, true,
+				false, false);
+		}
+		return new MBeanInfo(getClass().getName(), "ImageJ runtime metrics",
+			attributes, null, new MBeanOperationInfo[0],
+			new MBeanNotificationInfo[0]);
+	}
+
+}
@@ -0,0 +1,150 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2015 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+
+package net.imagej.metrics;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.function.DoubleSupplier;
+import java.util.function.Supplier;
+
+import net.imagej.ImageJService;
+
+/**
+ * Interface for services that collect runtime metrics of an ImageJ context.
+ * <p>
+ * Metrics are {@link Counter}s, {@link LatencyHistogram}s and gauges, each
+ * identified by a dotted name. Characters of a name outside
+ * {@code [A-Za-z0-9_.]} are replaced by {@code _} when the metric is created,
+ * so that a module titled {@code Gaussian Blur...} is recorded as
+ * {@code module.Gaussian_Blur...}. Updating a counter or histogram that
+ * already exists takes no locks, so instrumentation can sit on hot paths.
+ * </p>
+ * <p>
+ * Besides metrics registered by callers, the service records:
+ * </p>
+ * <ul>
+ * <li>invocation counts and latencies of modules (commands, scripts and ops
+ * run as modules through the module service), as {@code module.<title>}, and
+ * the number of runs that failed, as {@code module.<title>.errors}</li>
+ * <li>the number of datasets opened and saved through the I/O service, as
+ * {@code io.opened} and {@code io.saved}, with the size of the files on disk
+ * ({@code io.opened.file_bytes}, {@code io.saved.file_bytes}) and of the
+ * datasets in memory ({@code io.opened.memory_bytes},
+ * {@code io.saved.memory_bytes})</li>
+ * <li>the number and total size of datasets in the context, as
+ * {@code dataset.count} and {@code dataset.bytes}</li>
+ * <li>display updates, as {@code display.updates}</li>
+ * <li>hits and misses of every service implementing
+ * {@link CacheStatistics}, as {@code cache.<service>.hits} and
+ * {@code cache.<service>.misses}</li>
+ * </ul>
+ * <p>
+ * Op calls are <em>not</em> counted automatically: {@code ij.op().run(...)}
+ * and the other methods of the op service call ops directly, publishing no
+ * events, and the op service belongs to imagej-ops. Op counts and latencies
+ * are only recorded where callers wrap their calls in {@link #timed}, under
+ * {@link #OP_PREFIX} and the op name. Likewise, the I/O service's events carry
+ * no timings, so read and write latencies through SCIFIO are only recorded
+ * where callers time them under {@link #IO_PREFIX}, and renderers time their
+ * frames under {@link #RENDER_FRAME}.
+ * </p>
+ * <p>
+ * All metrics are exported as attributes of a JMX MBean named
+ * {@code net.imagej:type=Metrics,context=<hash>}, where {@code <hash>} is the
+ * identity hash code of the context in hexadecimal, so that several contexts
+ * in one JVM each get their own MBean. They can also be served as text or JSON
+ * from a local HTTP endpoint (see {@link #startEndpoint}).
+ * </p>
+ */
+public interface MetricsService extends ImageJService {
+
+	/**
+	 * Prefix of op latency metrics, e.g. {@code op.math.add}. Only recorded by
+	 * callers timing their op calls with {@link #timed}.
+	 */
+	String OP_PREFIX = "op.";
+
+	/** Prefix of I/O metrics, e.g. {@code io.read}. */
+	String IO_PREFIX = "io.";
+
+	/** Name of the frame time metric of renderers. */
+	String RENDER_FRAME = "render.frame";
+
+	/** Gets the counter with the given name, creating it if needed. */
+	Counter counter(String name);
+
+	/** Gets the latency histogram with the given name, creating it if needed. */
+	LatencyHistogram timer(String name);
+
+	/** Registers a gauge, whose value is computed whenever it is read. */
+	void gauge(String name, DoubleSupplier value);
+
+	/**
+	 * Runs the given code, recording its duration in the named latency
+	 * histogram.
+	 *
+	 * @return The result of the code.
+	 */
+	default <T> T timed(final String name, final Supplier<T> code) {
+		final LatencyHistogram timer = timer(name);
+		final long start = System.nanoTime();
+		try {
+			return code.get();
+		}
+		finally {
+			timer.recordSince(start);
+		}
+	}
+
+	/** Gets the current value of every metric, sorted by name. */
+	Map<String, Number> snapshot();
+
+	/** Gets the current metrics as {@code name value} lines. */
+	String toText();
+
+	/** Gets the current metrics as a JSON object. */
+	String toJSON();
+
+	/**
+	 * Starts serving metrics over HTTP on the loopback interface: as text from
+	 * {@code /metrics} and as JSON from {@code /metrics.json}.
+	 *
+	 * @param port The port to listen on, or 0 for any free port.
+	 * @return The port actually listened on.
+	 */
+	int startEndpoint(int port) throws IOException;
+
+	/** Stops the HTTP endpoint, if running. */
+	void stopEndpoint();
+
+}
@@ -0,0 +1,271 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2015 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+
+package net.imagej.notebook;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
+
+import net.imagej.Dataset;
+import net.imagej.event.DatasetDeletedEvent;
+import net.imagej.event.DatasetUpdatedEvent;
+import net.imagej.util.Parallel;
+import net.imagej.util.SourceCache;
+import net.imglib2.Cursor;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.view.Views;
+
+import org.scijava.event.EventHandler;
+import org.scijava.plugin.Parameter;
+import org.scijava.plugin.Plugin;
+import org.scijava.service.AbstractService;
+import org.scijava.service.Service;
+import org.scijava.thread.ThreadService;
+
+/**
+ * Default service for generating notebook thumbnails and mosaics.
+ *
+ * @see ThumbnailService
+ */
+@Plugin(type = Service.class)
+public class DefaultThumbnailService extends AbstractService implements
+	ThumbnailService
+{
+
+	/** Maximum total size of the cached thumbnails, in bytes. */
+	private static final long MAX_CACHE_BYTES = 64L << 20;
+
+	@Parameter
+	private ThreadService threadService;
+
+	private final SourceCache<Img<FloatType>> cache = new SourceCache<>(
+		MAX_CACHE_BYTES, thumbnail -> thumbnail.size() * Float.BYTES, Img::copy);
+
+	// -- ThumbnailService methods --
+
+	@Override
+	public Img<FloatType> thumbnail(final Dataset source, final int maxWidth,
+		final int maxHeight, final long... position)
+	{
+		return cached(source, source.getImgPlus(), maxWidth, maxHeight, position);
+	}
+
+	@Override
+	public Img<FloatType> thumbnail(
+		final RandomAccessibleInterval<? extends RealType<?>> source,
+		final int maxWidth, final int maxHeight, final long... position)
+	{
+		return cached(source, source, maxWidth, maxHeight, position);
+	}
+
+	@Override
+	public Img<FloatType> mosaic(
+		final List<? extends RandomAccessibleInterval<? extends RealType<?>>> sources,
+		final int columns, final int tileWidth, final int tileHeight)
+	{
+		if (columns <= 0) {
+			throw new IllegalArgumentException("Invalid column count: " + columns);
+		}
+		if (sources.isEmpty()) {
+			throw new IllegalArgumentException("No images given");
+		}
+		if (tileWidth <= 0 || tileHeight <= 0) {
+			throw new IllegalArgumentException("Invalid tile size: " + tileWidth +
+				"x" + tileHeight);
+		}
+		final int rows = (sources.size() + columns - 1) / columns;
+		final long size = (long) columns * tileWidth * rows * tileHeight;
+		if (size > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Mosaic too large: " + columns *
+				(long) tileWidth + "x" + rows * (long) tileHeight);
+		}
+		final int width = columns * tileWidth;
+		final float[] mosaic = new float[(int) size];
+
+		// NB: Each task renders a contiguous batch of tiles into its own region.
+		final long[] batches = Parallel.batches(sources.size());
+		final List<Future<?>> futures = new ArrayList<>();
+		for (int b = 0; b < batches.length - 1; b++) {
+			final int from = (int) batches[b], to = (int) batches[b + 1];
+			futures.add(threadService.run(() -> {
+				for (int i = from; i < to; i++) {
+					final Img<FloatType> tile = //
+						thumbnail(sources.get(i), tileWidth, tileHeight);
+					paste(tile, mosaic, width, (i % columns) * tileWidth, //
+						(i / columns) * tileHeight);
+				}
+			}));
+		}
+		for (final Future<?> future : futures) {
+			Parallel.get(future);
+		}
+		return ArrayImgs.floats(mosaic, width, rows * tileHeight);
+	}
+
+	@Override
+	public void clearCache() {
+		cache.clear();
+	}
+
+	@Override
+	public void invalidate(final Object source) {
+		cache.invalidate(source);
+	}
+
+	// -- CacheStatistics methods --
+
+	@Override
+	public long getHits() {
+		return cache.getHits();
+	}
+
+	@Override
+	public long getMisses() {
+		return cache.getMisses();
+	}
+
+	// -- Event handlers --
+
+	@EventHandler
+	protected void onEvent(final DatasetUpdatedEvent evt) {
+		invalidate(evt.getObject());
+	}
+
+	@EventHandler
+	protected void onEvent(final DatasetDeletedEvent evt) {
+		invalidate(evt.getObject());
+	}
+
+	// -- Helper methods --
+
+	private Img<FloatType> cached(final Object identity,
+		final RandomAccessibleInterval<? extends RealType<?>> source,
+		final int maxWidth, final int maxHeight, final long... position)
+	{
+		// NB: Computed outside the cache's lock, so mosaic tiles render in
+		// parallel.
+		return cache.get(identity, () -> downsample(source, maxWidth, maxHeight,
+			position), maxWidth, maxHeight, position.clone());
+	}
+
+	/**
+	 * Averages the requested plane of the source into a new image no larger than
+	 * the given size, visiting each source pixel exactly once.
+	 */
+	private Img<FloatType> downsample(
+		final RandomAccessibleInterval<? extends RealType<?>> source,
+		final int maxWidth, final int maxHeight, final long... position)
+	{
+		if (maxWidth <= 0 || maxHeight <= 0) {
+			throw new IllegalArgumentException("Invalid thumbnail size: " +
+				maxWidth + "x" + maxHeight);
+		}
+		if (source.numDimensions() < 2) {
+			throw new IllegalArgumentException("Source must be at least 2D");
+		}
+
+		RandomAccessibleInterval<? extends RealType<?>> plane = source;
+		for (int d = source.numDimensions() - 1; d >= 2; d--) {
+			final long pos = d - 2 < position.length ? //
+				position[d - 2] : source.min(d);
+			if (pos < source.min(d) || pos > source.max(d)) {
+				throw new IllegalArgumentException("Position " + pos +
+					" is out of bounds for dimension " + d);
+			}
+			plane = Views.hyperSlice(plane, d, pos);
+		}
+
+		final long width = plane.dimension(0);
+		final long height = plane.dimension(1);
+		final long factor = Math.max(1, Math.max(ceilDiv(width, maxWidth),
+			ceilDiv(height, maxHeight)));
+		final int w = (int) ceilDiv(width, factor);
+		final int h = (int) ceilDiv(height, factor);
+		final double[] sums = new double[w * h];
+		final long[] counts = new long[w * h];
+
+		final long minX = plane.min(0), minY = plane.min(1);
+		final Cursor<? extends RealType<?>> c = //
+			Views.flatIterable(plane).localizingCursor();
+		while (c.hasNext()) {
+			c.fwd();
+			final int x = (int) ((c.getLongPosition(0) - minX) / factor);
+			final int y = (int) ((c.getLongPosition(1) - minY) / factor);
+			final int index = y * w + x;
+			sums[index] += c.get().getRealDouble();
+			counts[index]++;
+		}
+
+		final float[] pixels = new float[w * h];
+		for (int i = 0; i < pixels.length; i++) {
+			pixels[i] = counts[i] == 0 ? 0 : (float) (sums[i] / counts[i]);
+		}
+		return ArrayImgs.floats(pixels, w, h);
+	}
+
+	/** Copies a tile into the mosaic, scaled to the range [0, 1]. */
+	private static void paste(final Img<FloatType> tile, final float[] mosaic,
+		final int width, final int offsetX, final int offsetY)
+	{
+		final double[] range = range(tile);
+		final double extent = range[1] - range[0];
+		final Cursor<FloatType> c = tile.localizingCursor();
+		while (c.hasNext()) {
+			c.fwd();
+			final double v = c.get().getRealDouble();
+			final int x = offsetX + c.getIntPosition(0);
+			final int y = offsetY + c.getIntPosition(1);
+			mosaic[y * width + x] = //
+				(float) (extent == 0 ? 0 : (v - range[0]) / extent);
+		}
+	}
+
+	private static long ceilDiv(final long numerator, final long denominator) {
+		return (numerator + denominator - 1) / denominator;
+	}
+
+	private static double[] range(final Img<FloatType> img) {
+		double min = Double.POSITIVE_INFINITY, max = Double.NEGATIVE_INFINITY;
+		for (final FloatType t : img) {
+			final double v = t.getRealDouble();
+			if (v < min) min = v;
+			if (v > max) max = v;
+		}
+		return new double[] { min, max };
+	}
+
+}
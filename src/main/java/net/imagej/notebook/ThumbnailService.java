@@ -0,0 +1,119 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2015 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+
+package net.imagej.notebook;
+
+import java.util.List;
+
+import net.imagej.Dataset;
+import net.imagej.ImageJService;
+import net.imagej.metrics.CacheStatistics;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.Img;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.type.numeric.real.FloatType;
+
+/**
+ * Interface for services that produce downsampled thumbnails and multi-image
+ * mosaics, suitable for embedding into notebook output without rendering
+ * full-resolution data.
+ * <p>
+ * Thumbnails are computed by streaming once over the pixels of the requested
+ * plane and averaging them into the (small) output image, so the source is
+ * never materialized in memory. Results are cached by source identity and view
+ * parameters.
+ * </p>
+ *
+ * @see NotebookService
+ */
+public interface ThumbnailService extends ImageJService,
+	CacheStatistics
+{
+
+	/** Default maximum width and height of a thumbnail, in pixels. */
+	int DEFAULT_SIZE = 256;
+
+	/**
+	 * Gets a thumbnail of the first plane of the given dataset, no larger than
+	 * {@link #DEFAULT_SIZE} in either dimension.
+	 */
+	default Img<FloatType> thumbnail(final Dataset source) {
+		return thumbnail(source, DEFAULT_SIZE, DEFAULT_SIZE);
+	}
+
+	/**
+	 * Gets a thumbnail of one plane of the given dataset.
+	 *
+	 * @param source The dataset to downsample.
+	 * @param maxWidth Maximum width of the thumbnail.
+	 * @param maxHeight Maximum height of the thumbnail.
+	 * @param position Position along each non-XY dimension of the plane to
+	 *          render; missing values default to the minimum of the dimension.
+	 * @return A thumbnail whose pixels are the mean of the source pixels they
+	 *         cover. It is a copy of the cached thumbnail, so the caller may
+	 *         modify it.
+	 */
+	Img<FloatType> thumbnail(Dataset source, int maxWidth, int maxHeight,
+		long... position);
+
+	/**
+	 * Gets a thumbnail of one plane of the given image.
+	 *
+	 * @see #thumbnail(Dataset, int, int, long...)
+	 */
+	Img<FloatType> thumbnail(
+		RandomAccessibleInterval<? extends RealType<?>> source, int maxWidth,
+		int maxHeight, long... position);
+
+	/**
+	 * Gets a mosaic of thumbnails of the first plane of each given image,
+	 * arranged in a grid with the given number of columns. Each tile is scaled
+	 * to the range [0, 1] independently of the others. Tiles are rendered in
+	 * parallel.
+	 *
+	 * @param sources The images to include in the mosaic.
+	 * @param columns Number of tiles per row.
+	 * @param tileWidth Maximum width of each tile.
+	 * @param tileHeight Maximum height of each tile.
+	 * @return The mosaic image.
+	 */
+	Img<FloatType> mosaic(
+		List<? extends RandomAccessibleInterval<? extends RealType<?>>> sources,
+		int columns, int tileWidth, int tileHeight);
+
+	/** Discards all cached thumbnails. */
+	void clearCache();
+
+	/** Discards all cached thumbnails of the given source. */
+	void invalidate(Object source);
+
+}
@@ -0,0 +1,215 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2015 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+
+package net.imagej.operator;
+
+/**
+ * Specialized {@link BinaryArithmetic} kernels over primitive arrays.
+ * <p>
+ * Each type/operator pair gets its own branch-free inner loop over plain
+ * arrays, which the JIT compiler can unroll and auto-vectorize. The results
+ * are identical to {@link BinaryArithmetic#apply} followed by the rounding and
+ * clamping rules documented there.
+ * </p>
+ */
+public final class ArithmeticKernels {
+
+	private ArithmeticKernels() {
+		// prevent instantiation of utility class
+	}
+
+	/** Applies the given operator to unsigned 8-bit arrays over [from, to). */
+	public static void apply(final BinaryArithmetic op, final byte[] a,
+		final byte[] b, final byte[] out, final int from, final int to)
+	{
+		switch (op) {
+			case ADD:
+				for (int i = from; i < to; i++) {
+					final int v = (a[i] & 0xff) + (b[i] & 0xff);
+					out[i] = (byte) (v > 255 ? 255 : v);
+				}
+				break;
+			case SUBTRACT:
+				for (int i = from; i < to; i++) {
+					final int v = (a[i] & 0xff) - (b[i] & 0xff);
+					out[i] = (byte) (v < 0 ? 0 : v);
+				}
+				break;
+			case MULTIPLY:
+				for (int i = from; i < to; i++) {
+					final long v = (long) (a[i] & 0xff) * (b[i] & 0xff);
+					out[i] = (byte) (v > 255 ? 255 : v);
+				}
+				break;
+			case DIVIDE:
+				for (int i = from; i < to; i++) {
+					final int x = a[i] & 0xff, y = b[i] & 0xff;
+					// NB: (2x + y) / 2y == floor(x / y + 1/2) for x, y >= 0.
+					final int v = y == 0 ? (x == 0 ? 0 : 255) : //
+						(2 * x + y) / (2 * y);
+					out[i] = (byte) (v > 255 ? 255 : v);
+				}
+				break;
+			case MIN:
+				for (int i = from; i < to; i++) {
+					out[i] = (byte) Math.min(a[i] & 0xff, b[i] & 0xff);
+				}
+				break;
+			case MAX:
+				for (int i = from; i < to; i++) {
+					out[i] = (byte) Math.max(a[i] & 0xff, b[i] & 0xff);
+				}
+				break;
+			case AVERAGE:
+				for (int i = from; i < to; i++) {
+					out[i] = (byte) (((a[i] & 0xff) + (b[i] & 0xff) + 1) >> 1);
+				}
+				break;
+			case DIFFERENCE:
+				for (int i = from; i < to; i++) {
+					out[i] = (byte) Math.abs((a[i] & 0xff) - (b[i] & 0xff));
+				}
+				break;
+			default:
+				throw new IllegalArgumentException("Unsupported operator: " + op);
+		}
+	}
+
+	/** Applies the given operator to unsigned 16-bit arrays over [from, to). */
+	public static void apply(final BinaryArithmetic op, final short[] a,
+		final short[] b, final short[] out, final int from, final int to)
+	{
+		switch (op) {
+			case ADD:
+				for (int i = from; i < to; i++) {
+					final int v = (a[i] & 0xffff) + (b[i] & 0xffff);
+					out[i] = (short) (v > 65535 ? 65535 : v);
+				}
+				break;
+			case SUBTRACT:
+				for (int i = from; i < to; i++) {
+					final int v = (a[i] & 0xffff) - (b[i] & 0xffff);
+					out[i] = (short) (v < 0 ? 0 : v);
+				}
+				break;
+			case MULTIPLY:
+				for (int i = from; i < to; i++) {
+					final long v = (long) (a[i] & 0xffff) * (b[i] & 0xffff);
+					out[i] = (short) (v > 65535 ? 65535 : v);
+				}
+				break;
+			case DIVIDE:
+				for (int i = from; i < to; i++) {
+					final int x = a[i] & 0xffff, y = b[i] & 0xffff;
+					// NB: (2x + y) / 2y == floor(x / y + 1/2) for x, y >= 0.
+					final int v = y == 0 ? (x == 0 ? 0 : 65535) : //
+						(2 * x + y) / (2 * y);
+					out[i] = (short) (v > 65535 ? 65535 : v);
+				}
+				break;
+			case MIN:
+				for (int i = from; i < to; i++) {
+					out[i] = (short) Math.min(a[i] & 0xffff, b[i] & 0xffff);
+				}
+				break;
+			case MAX:
+				for (int i = from; i < to; i++) {
+					out[i] = (short) Math.max(a[i] & 0xffff, b[i] & 0xffff);
+				}
+				break;
+			case AVERAGE:
+				for (int i = from; i < to; i++) {
+					out[i] = (short) (((a[i] & 0xffff) + (b[i] & 0xffff) + 1) >> 1);
+				}
+				break;
+			case DIFFERENCE:
+				for (int i = from; i < to; i++) {
+					out[i] = (short) Math.abs((a[i] & 0xffff) - (b[i] & 0xffff));
+				}
+				break;
+			default:
+				throw new IllegalArgumentException("Unsupported operator: " + op);
+		}
+	}
+
+	/** Applies the given operator to 32-bit float arrays over [from, to). */
+	public static void apply(final BinaryArithmetic op, final float[] a,
+		final float[] b, final float[] out, final int from, final int to)
+	{
+		switch (op) {
+			case ADD:
+				for (int i = from; i < to; i++) {
+					out[i] = a[i] + b[i];
+				}
+				break;
+			case SUBTRACT:
+				for (int i = from; i < to; i++) {
+					out[i] = a[i] - b[i];
+				}
+				break;
+			case MULTIPLY:
+				for (int i = from; i < to; i++) {
+					out[i] = a[i] * b[i];
+				}
+				break;
+			case DIVIDE:
+				for (int i = from; i < to; i++) {
+					out[i] = a[i] / b[i];
+				}
+				break;
+			case MIN:
+				for (int i = from; i < to; i++) {
+					out[i] = Math.min(a[i], b[i]);
+				}
+				break;
+			case MAX:
+				for (int i = from; i < to; i++) {
+					out[i] = Math.max(a[i], b[i]);
+				}
+				break;
+			case AVERAGE:
+				for (int i = from; i < to; i++) {
+					// NB: Average in double precision to match the generic path exactly.
+					out[i] = (float) (((double) a[i] + b[i]) / 2);
+				}
+				break;
+			case DIFFERENCE:
+				for (int i = from; i < to; i++) {
+					out[i] = Math.abs(a[i] - b[i]);
+				}
+				break;
+			default:
+				throw new IllegalArgumentException("Unsupported operator: " + op);
+		}
+	}
+
+}
@@ -0,0 +1,77 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2015 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+
+package net.imagej.operator;
+
+import net.imagej.ImageJService;
+import net.imglib2.img.Img;
+import net.imglib2.type.numeric.RealType;
+
+/**
+ * Interface for services that apply {@link BinaryArithmetic} operators to
+ * whole images, as the Image Calculator does.
+ * <p>
+ * Unsigned 8-bit, unsigned 16-bit and 32-bit float images stored in array or
+ * planar layout are processed by the specialized {@link ArithmeticKernels},
+ * in about one contiguous batch of pixels per processor. All other images take
+ * the generic, pixel by pixel path, which produces identical results.
+ * </p>
+ *
+ * @see CalculatorService
+ */
+public interface ArithmeticService extends ImageJService {
+
+	/**
+	 * Computes {@code out = op(a, b)} pixel by pixel.
+	 *
+	 * @throws IllegalArgumentException if the images do not have the same
+	 *           bounds.
+	 */
+	<T extends RealType<T>> void compute(BinaryArithmetic op, Img<T> a,
+		Img<T> b, Img<T> out);
+
+	/**
+	 * Computes {@code out = op(a, b)} using the generic, single-threaded path
+	 * regardless of type and layout.
+	 *
+	 * @see #compute
+	 */
+	<T extends RealType<T>> void computeGeneric(BinaryArithmetic op, Img<T> a,
+		Img<T> b, Img<T> out);
+
+	/**
+	 * Gets whether {@link #compute} can use the specialized kernels for the
+	 * given images.
+	 */
+	boolean isAccelerated(Img<?> a, Img<?> b, Img<?> out);
+
+}
@@ -0,0 +1,118 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2015 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+
+package net.imagej.operator;
+
+/**
+ * Binary pixel operators supported by {@link ArithmeticService}.
+ * <p>
+ * {@link #apply} defines the exact result of each operator. For integer
+ * images, the result is then rounded half up and clamped to the range of the
+ * type, with NaN (i.e., 0 / 0) mapping to 0. Floating-point results are
+ * stored as they are.
+ * </p>
+ */
+public enum BinaryArithmetic {
+
+		ADD {
+
+			@Override
+			public double apply(final double a, final double b) {
+				return a + b;
+			}
+		},
+		SUBTRACT {
+
+			@Override
+			public double apply(final double a, final double b) {
+				return a - b;
+			}
+		},
+		MULTIPLY {
+
+			@Override
+			public double apply(final double a, final double b) {
+				return a * b;
+			}
+		},
+		DIVIDE {
+
+			@Override
+			public double apply(final double a, final double b) {
+				return a / b;
+			}
+		},
+		MIN {
+
+			@Override
+			public double apply(final double a, final double b) {
+				return Math.min(a, b);
+			}
+		},
+		MAX {
+
+			@Override
+			public double apply(final double a, final double b) {
+				return Math.max(a, b);
+			}
+		},
+		AVERAGE {
+
+			@Override
+			public double apply(final double a, final double b) {
+				return (a + b) / 2;
+			}
+		},
+		DIFFERENCE {
+
+			@Override
+			public double apply(final double a, final double b) {
+				return Math.abs(a - b);
+			}
+		};
+
+	/** Computes the operator's result for one pair of pixel values. */
+	public abstract double apply(double a, double b);
+
+	/**
+	 * Rounds half up and clamps the given result into the integer range
+	 * [min, max], mapping NaN to 0.
+	 */
+	public static double clamp(final double value, final double min,
+		final double max)
+	{
+		if (Double.isNaN(value)) return 0;
+		final double rounded = Math.floor(value + 0.5);
+		return rounded < min ? min : rounded > max ? max : rounded;
+	}
+
+}
@@ -0,0 +1,209 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2015 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+
+package net.imagej.operator;
+
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
+
+import net.imagej.util.Parallel;
+import net.imglib2.Cursor;
+import net.imglib2.Interval;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.basictypes.ArrayDataAccess;
+import net.imglib2.img.planar.PlanarImg;
+import net.imglib2.type.numeric.IntegerType;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.view.Views;
+
+import org.scijava.plugin.Parameter;
+import org.scijava.plugin.Plugin;
+import org.scijava.service.AbstractService;
+import org.scijava.service.Service;
+import org.scijava.thread.ThreadService;
+
+/**
+ * Default implementation of {@link ArithmeticService}.
+ */
+@Plugin(type = Service.class)
+public class DefaultArithmeticService extends AbstractService implements
+	ArithmeticService
+{
+
+	@Parameter
+	private ThreadService threadService;
+
+	// -- ArithmeticService methods --
+
+	@Override
+	public <T extends RealType<T>> void compute(final BinaryArithmetic op,
+		final Img<T> a, final Img<T> b, final Img<T> out)
+	{
+		checkBounds(a, b);
+		checkBounds(a, out);
+		if (!isAccelerated(a, b, out)) {
+			computeGeneric(op, a, b, out);
+			return;
+		}
+
+		final List<Object> planesA = planes(a);
+		final List<Object> planesB = planes(b);
+		final List<Object> planesOut = planes(out);
+		final long length = Array.getLength(planesA.get(0));
+
+		// NB: Split the concatenated planes into one contiguous batch per
+		// processor, so that tasks neither multiply with the plane count nor
+		// idle when there are fewer planes than processors.
+		final long[] batches = Parallel.batches(planesA.size() * length);
+		final List<Future<?>> futures = new ArrayList<>();
+		for (int batch = 0; batch < batches.length - 1; batch++) {
+			final long start = batches[batch], end = batches[batch + 1];
+			futures.add(threadService.run(() -> {
+				for (long i = start; i < end;) {
+					final int p = (int) (i / length);
+					final int from = (int) (i % length);
+					final int to = (int) Math.min(length, from + end - i);
+					kernel(op, planesA.get(p), planesB.get(p), planesOut.get(p), from,
+						to);
+					i += to - from;
+				}
+			}));
+		}
+		for (final Future<?> future : futures) {
+			Parallel.get(future);
+		}
+	}
+
+	@Override
+	public <T extends RealType<T>> void computeGeneric(final BinaryArithmetic op,
+		final Img<T> a, final Img<T> b, final Img<T> out)
+	{
+		checkBounds(a, b);
+		checkBounds(a, out);
+		final Cursor<T> ca = Views.flatIterable(a).cursor();
+		final Cursor<T> cb = Views.flatIterable(b).cursor();
+		final Cursor<T> co = Views.flatIterable(out).cursor();
+		while (ca.hasNext()) {
+			final double v = op.apply(ca.next().getRealDouble(), //
+				cb.next().getRealDouble());
+			final T t = co.next();
+			if (t instanceof IntegerType) {
+				t.setReal(BinaryArithmetic.clamp(v, t.getMinValue(), //
+					t.getMaxValue()));
+			}
+			else t.setReal(v);
+		}
+	}
+
+	@Override
+	public boolean isAccelerated(final Img<?> a, final Img<?> b,
+		final Img<?> out)
+	{
+		final Class<?> type = a.firstElement().getClass();
+		if (type != UnsignedByteType.class && type != UnsignedShortType.class &&
+			type != FloatType.class)
+		{
+			return false;
+		}
+		if (b.firstElement().getClass() != type) return false;
+		if (out.firstElement().getClass() != type) return false;
+
+		if (a instanceof ArrayImg) {
+			return b instanceof ArrayImg && out instanceof ArrayImg;
+		}
+		if (a instanceof PlanarImg) {
+			if (!(b instanceof PlanarImg) || !(out instanceof PlanarImg)) {
+				return false;
+			}
+			final int slices = ((PlanarImg<?, ?>) a).numSlices();
+			return ((PlanarImg<?, ?>) b).numSlices() == slices &&
+				((PlanarImg<?, ?>) out).numSlices() == slices;
+		}
+		return false;
+	}
+
+	// -- Helper methods --
+
+	private static void kernel(final BinaryArithmetic op, final Object a,
+		final Object b, final Object out, final int from, final int to)
+	{
+		if (a instanceof byte[]) {
+			ArithmeticKernels.apply(op, (byte[]) a, (byte[]) b, (byte[]) out, from,
+				to);
+		}
+		else if (a instanceof short[]) {
+			ArithmeticKernels.apply(op, (short[]) a, (short[]) b, (short[]) out,
+				from, to);
+		}
+		else if (a instanceof float[]) {
+			ArithmeticKernels.apply(op, (float[]) a, (float[]) b, (float[]) out,
+				from, to);
+		}
+		else {
+			throw new IllegalArgumentException("Unsupported storage: " +
+				a.getClass().getName());
+		}
+	}
+
+	/** Gets the primitive storage arrays of an array or planar image. */
+	private static List<Object> planes(final Img<?> img) {
+		final List<Object> planes = new ArrayList<>();
+		if (img instanceof ArrayImg) {
+			final Object access = ((ArrayImg<?, ?>) img).update(null);
+			planes.add(((ArrayDataAccess<?>) access).getCurrentStorageArray());
+		}
+		else {
+			final PlanarImg<?, ?> planar = (PlanarImg<?, ?>) img;
+			for (int i = 0; i < planar.numSlices(); i++) {
+				planes.add(planar.getPlane(i).getCurrentStorageArray());
+			}
+		}
+		return planes;
+	}
+
+	private static void checkBounds(final Interval a, final Interval b) {
+		boolean same = a.numDimensions() == b.numDimensions();
+		for (int d = 0; same && d < a.numDimensions(); d++) {
+			same = a.min(d) == b.min(d) && a.max(d) == b.max(d);
+		}
+		if (!same) {
+			throw new IllegalArgumentException("Image bounds do not match");
+		}
+	}
+
+}
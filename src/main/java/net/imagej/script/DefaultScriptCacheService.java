@@ -0,0 +1,301 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2015 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+
+package net.imagej.script;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.script.Compilable;
+import javax.script.CompiledScript;
+import javax.script.ScriptContext;
+import javax.script.ScriptEngine;
+import javax.script.ScriptException;
+
+import org.scijava.convert.ConvertService;
+import org.scijava.module.Module;
+import org.scijava.module.ModuleException;
+import org.scijava.module.ModuleItem;
+import org.scijava.module.ModuleRunner;
+import org.scijava.module.ModuleService;
+import org.scijava.module.process.ModulePreprocessor;
+import org.scijava.module.process.PreprocessorPlugin;
+import org.scijava.plugin.Parameter;
+import org.scijava.plugin.Plugin;
+import org.scijava.plugin.PluginService;
+import org.scijava.script.ScriptInfo;
+import org.scijava.script.ScriptLanguage;
+import org.scijava.script.ScriptService;
+import org.scijava.service.AbstractService;
+import org.scijava.service.Service;
+import org.scijava.util.FileUtils;
+
+/**
+ * Default implementation of {@link ScriptCacheService}.
+ */
+@Plugin(type = Service.class)
+public class DefaultScriptCacheService extends AbstractService implements
+	ScriptCacheService
+{
+
+	@Parameter
+	private ScriptService scriptService;
+
+	@Parameter
+	private ModuleService moduleService;
+
+	@Parameter
+	private PluginService pluginService;
+
+	@Parameter
+	private ConvertService convertService;
+
+	/**
+	 * Maximum number of cached scripts. Each holds at least one script engine,
+	 * so scripts with inlined values, which differ on every run, must not
+	 * accumulate without bound.
+	 */
+	private static final int MAX_ENTRIES = 256;
+
+	/** Maximum number of idle compiled instances kept per script. */
+	private static final int MAX_IDLE = 4;
+
+	/** Cached scripts, least recently used first. */
+	private final Map<String, CacheEntry> cache = Collections.synchronizedMap(
+		new LinkedHashMap<String, CacheEntry>(16, 0.75f, true)
+		{
+
+			@Override
+			protected boolean removeEldestEntry(
+				final Map.Entry<String, CacheEntry> eldest)
+			{
+				return size() > MAX_ENTRIES;
+			}
+		});
+
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder savedNanos = new LongAdder();
+
+	// -- ScriptCacheService methods --
+
+	@Override
+	public CompiledScript compile(final ScriptLanguage language,
+		final String script) throws ScriptException
+	{
+		final CacheEntry entry = cache.get(key(language, script));
+		final CompiledScript shared = entry == null ? null : entry.shared;
+		if (shared != null) {
+			hits.increment();
+			savedNanos.add(entry.compileNanos);
+			return shared;
+		}
+		misses.increment();
+		final long start = System.nanoTime();
+		final CompiledScript compiled = compileNew(language, script);
+		if (compiled == null) return null;
+		final CacheEntry created =
+			entry(language, script, System.nanoTime() - start);
+		synchronized (created) {
+			if (created.shared == null) created.shared = compiled;
+			return created.shared;
+		}
+	}
+
+	@Override
+	public Object run(final ScriptLanguage language, final String script,
+		final ScriptContext context) throws ScriptException
+	{
+		CacheEntry entry = cache.get(key(language, script));
+		CompiledScript compiled = entry == null ? null : entry.idle.poll();
+		if (compiled != null) {
+			hits.increment();
+			savedNanos.add(entry.compileNanos);
+		}
+		else {
+			// NB: No idle instance, because the script is new or every instance is
+			// in use; compile another one with its own engine, which then joins the
+			// pool.
+			misses.increment();
+			final long start = System.nanoTime();
+			compiled = compileNew(language, script);
+			// NB: Languages which cannot compile get a fresh engine per run.
+			if (compiled == null) {
+				return language.getScriptEngine().eval(script, context);
+			}
+			if (entry == null) {
+				entry = entry(language, script, System.nanoTime() - start);
+			}
+		}
+		try {
+			return compiled.eval(context);
+		}
+		finally {
+			entry.idle.offer(compiled);
+		}
+	}
+
+	@Override
+	public Object run(final File file, final Map<String, ?> inputs,
+		final ScriptContext context) throws IOException, ScriptException
+	{
+		final ScriptLanguage language =
+			scriptService.getLanguageByExtension(FileUtils.getExtension(file));
+		if (language == null) {
+			throw new IllegalArgumentException("No script language for " + file);
+		}
+		final ScriptInfo info = new ScriptInfo(getContext(), file);
+		final Module module;
+		try {
+			module = moduleService.createModule(info);
+		}
+		catch (final ModuleException exc) {
+			throw new ScriptException(exc);
+		}
+		if (inputs != null) {
+			for (final Map.Entry<String, ?> entry : inputs.entrySet()) {
+				final ModuleItem<?> item = info.getInput(entry.getKey());
+				final Object value = item == null ? entry.getValue() : //
+					convertService.convert(entry.getValue(), item.getType());
+				module.setInput(entry.getKey(), value);
+				module.resolveInput(entry.getKey());
+			}
+		}
+
+		// NB: Run only the preprocessors; the script itself is evaluated from
+		// the cache rather than by the module.
+		final ModulePreprocessor canceler = new ModuleRunner(getContext(), module,
+			pluginService.createInstancesOfType(PreprocessorPlugin.class), null)
+				.preProcess();
+		if (canceler != null) {
+			throw new ScriptException("Cannot run " + file + ": " + canceler
+				.getCancelReason());
+		}
+		context.getBindings(ScriptContext.ENGINE_SCOPE).putAll(module
+			.getInputs());
+		return run(language, info.getProcessedScript(), context);
+	}
+
+	@Override
+	public long getHits() {
+		return hits.sum();
+	}
+
+	@Override
+	public long getMisses() {
+		return misses.sum();
+	}
+
+	@Override
+	public long getTimeSaved() {
+		return savedNanos.sum() / 1000000;
+	}
+
+	@Override
+	public void clearCache() {
+		cache.clear();
+	}
+
+	// -- Helper methods --
+
+	/**
+	 * Compiles the given script with a fresh engine.
+	 *
+	 * @return The compiled script, or null if the language cannot compile
+	 *         scripts.
+	 */
+	private static CompiledScript compileNew(final ScriptLanguage language,
+		final String script) throws ScriptException
+	{
+		final ScriptEngine engine = language.getScriptEngine();
+		if (!(engine instanceof Compilable)) return null;
+		return ((Compilable) engine).compile(script);
+	}
+
+	/** Gets the cache entry of the given script, creating it if needed. */
+	private CacheEntry entry(final ScriptLanguage language, final String script,
+		final long compileNanos)
+	{
+		return cache.computeIfAbsent(key(language, script),
+			k -> new CacheEntry(compileNanos));
+	}
+
+	private static String key(final ScriptLanguage language,
+		final String script)
+	{
+		try {
+			final MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			digest.update(language.getLanguageName().getBytes(
+				StandardCharsets.UTF_8));
+			digest.update((byte) 0);
+			final byte[] hash = digest.digest(script.getBytes(
+				StandardCharsets.UTF_8));
+			final StringBuilder sb = new StringBuilder();
+			for (final byte b : hash) {
+				sb.append(String.format("%02x", b));
+			}
+			return sb.toString();
+		}
+		catch (final NoSuchAlgorithmException exc) {
+			throw new IllegalStateException(exc);
+		}
+	}
+
+	// -- Helper classes --
+
+	/**
+	 * A cached script: the instance handed out by {@link #compile}, if any,
+	 * and a pool of up to {@link #MAX_IDLE} instances, each with its own engine,
+	 * that no run is using. Instances returned to a full pool are dropped.
+	 */
+	private static class CacheEntry {
+
+		private final long compileNanos;
+		private final BlockingQueue<CompiledScript> idle =
+			new LinkedBlockingQueue<>(MAX_IDLE);
+		private volatile CompiledScript shared;
+
+		public CacheEntry(final long compileNanos) {
+			this.compileNanos = compileNanos;
+		}
+	}
+
+}
@@ -0,0 +1,165 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2015 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+
+package net.imagej.script;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.Properties;
+
+import javax.script.ScriptException;
+
+import net.imagej.daemon.DaemonClient;
+import net.imagej.daemon.DaemonRequest;
+
+import org.scijava.console.AbstractConsoleArgument;
+import org.scijava.console.ConsoleArgument;
+import org.scijava.log.LogService;
+import org.scijava.plugin.Parameter;
+import org.scijava.plugin.Plugin;
+
+/**
+ * Handles the {@code --run-cached <script> ['key1=value1,key2=value2,...']}
+ * command line argument, which runs a script through the
+ * {@link ScriptCacheService} and reports the compile time saved.
+ * <p>
+ * As with {@code --run}, script parameters are processed: given inputs are
+ * converted to their declared types, and services and other resolvable inputs
+ * are filled in by the module preprocessors.
+ * </p>
+ * <p>
+ * Compiled scripts cannot be persisted, so the cache of a freshly launched
+ * context is always empty. If an ImageJ daemon started with {@code --server}
+ * is running, the script is therefore sent to it as a batch job, so that
+ * repeated launches reuse its warm cache and its output is printed here.
+ * Otherwise, or if the daemon refuses the job without running it, the script
+ * runs in this context, which only saves compilation for scripts run more
+ * than once in it.
+ * </p>
+ */
+@Plugin(type = ConsoleArgument.class)
+public class RunCachedArgument extends AbstractConsoleArgument {
+
+	private static final String FLAG = "--run-cached";
+
+	@Parameter(required = false)
+	private ScriptCacheService scriptCacheService;
+
+	@Parameter(required = false)
+	private LogService log;
+
+	// -- ConsoleArgument methods --
+
+	@Override
+	public void handle(final LinkedList<String> args) {
+		if (!supports(args)) return;
+
+		args.removeFirst(); // --run-cached
+		final String path = args.removeFirst();
+		final String pairs = !args.isEmpty() && !args.getFirst().startsWith("-")
+			? args.removeFirst() : null;
+		if (runOnDaemon(new File(path), pairs)) return;
+
+		final Map<String, Object> inputs = new HashMap<>();
+		if (pairs != null) {
+			for (final String pair : pairs.split(",")) {
+				final int equals = pair.indexOf('=');
+				if (equals < 0) continue;
+				inputs.put(pair.substring(0, equals).trim(), pair.substring(
+					equals + 1).trim());
+			}
+		}
+
+		try {
+			scriptCacheService.run(new File(path), inputs);
+		}
+		catch (final IOException | ScriptException exc) {
+			if (log != null) log.error(exc);
+		}
+		if (log != null) {
+			log.info("Script cache: " + scriptCacheService.getHits() + " hits, " +
+				scriptCacheService.getMisses() + " misses, " + scriptCacheService
+					.getTimeSaved() + " ms of compilation saved");
+		}
+	}
+
+	// -- Helper methods --
+
+	/**
+	 * Runs the given script on the running daemon, if any.
+	 *
+	 * @return False if there is no daemon, or it did not run the script.
+	 */
+	private boolean runOnDaemon(final File script, final String inputs) {
+		final String response;
+		try {
+			final Properties info = DaemonClient.readDaemonFile();
+			final String port = info.getProperty("port");
+			if (port == null) return false;
+			final DaemonRequest request = new DaemonRequest().set("token", info
+				.getProperty("token", "")).set("type", "batch").setBody(script
+					.getAbsolutePath() + "\n");
+			if (inputs != null) request.set("inputs", inputs);
+			response = DaemonClient.send(Integer.parseInt(port), request);
+		}
+		catch (final IOException | NumberFormatException exc) {
+			// NB: No daemon listening, e.g. because of a stale daemon file.
+			if (log != null) log.debug(exc);
+			return false;
+		}
+		final int eol = response.indexOf('\n');
+		final String status = eol < 0 ? response : response.substring(0, eol);
+		final String output = eol < 0 ? "" : response.substring(eol + 1);
+		if ("DENIED".equals(status) || "BUSY".equals(status)) return false;
+		if (DaemonClient.OK.equals(status)) {
+			System.out.print(output);
+			if (log != null) log.info("Script run by the ImageJ daemon");
+		}
+		else if (log != null) {
+			log.error("ImageJ daemon: " + status + (output.isEmpty() ? "" : ": " +
+				output));
+		}
+		return true;
+	}
+
+	// -- Typed methods --
+
+	@Override
+	public boolean supports(final LinkedList<String> args) {
+		return scriptCacheService != null && args.size() >= 2 && FLAG.equals(args
+			.getFirst());
+	}
+
+}
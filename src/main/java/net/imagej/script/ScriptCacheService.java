@@ -0,0 +1,152 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2015 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+
+package net.imagej.script;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+
+import javax.script.CompiledScript;
+import javax.script.ScriptContext;
+import javax.script.ScriptException;
+import javax.script.SimpleScriptContext;
+
+import net.imagej.ImageJService;
+import net.imagej.metrics.CacheStatistics;
+
+import org.scijava.script.ScriptLanguage;
+
+/**
+ * Interface for services that cache compiled scripts, so that running the same
+ * script again skips parsing and compilation.
+ * <p>
+ * Entries are keyed by a hash of the script language and content. Languages
+ * whose engines are not {@link javax.script.Compilable} are evaluated directly
+ * and never cached.
+ * </p>
+ * <p>
+ * The cache lives in memory only: compiled scripts are engine objects that
+ * cannot be persisted, so a new context starts cold. Repeated runs benefit
+ * within a long-lived context, such as the GUI or a resident
+ * {@link net.imagej.daemon.JobServer}, which keeps one context warm across
+ * many short jobs; {@code --run-cached} hands its script to such a server
+ * when one is running. The cache holds a bounded number of the most recently
+ * used scripts.
+ * </p>
+ */
+public interface ScriptCacheService extends ImageJService, CacheStatistics {
+
+	/**
+	 * Compiles the given script, or gets it from the cache.
+	 * <p>
+	 * The returned instance is shared by all callers of this method, but never
+	 * used by {@link #run}. Many script engines are not thread-safe, so callers
+	 * must not evaluate it concurrently.
+	 * </p>
+	 *
+	 * @return The compiled script, or null if the language cannot compile
+	 *         scripts.
+	 */
+	CompiledScript compile(ScriptLanguage language, String script)
+		throws ScriptException;
+
+	/**
+	 * Runs the given script in the given script context, using a cached
+	 * compiled form when available.
+	 * <p>
+	 * Concurrent runs of the same script never share a script engine: each
+	 * run takes a compiled instance that no other run is using, compiling a
+	 * further one with a fresh engine if needed. The variables, writer and
+	 * error writer of the run are those of the given context.
+	 * </p>
+	 *
+	 * @return The value of the script.
+	 */
+	Object run(ScriptLanguage language, String script, ScriptContext context)
+		throws ScriptException;
+
+	/**
+	 * Runs the given script with the given inputs bound as variables, writing
+	 * its output to {@link System#out} and {@link System#err}.
+	 *
+	 * @see #run(ScriptLanguage, String, ScriptContext)
+	 */
+	default Object run(final ScriptLanguage language, final String script,
+		final Map<String, ?> inputs) throws ScriptException
+	{
+		final ScriptContext context = new SimpleScriptContext();
+		if (inputs != null) {
+			context.getBindings(ScriptContext.ENGINE_SCOPE).putAll(inputs);
+		}
+		return run(language, script, context);
+	}
+
+	/**
+	 * Runs the given script file in the given script context, choosing the
+	 * language by file extension.
+	 * <p>
+	 * Unlike {@link #run(ScriptLanguage, String, ScriptContext)}, script
+	 * parameters are processed as for {@code --run}: given inputs are converted
+	 * to the declared types, and the remaining ones, such as
+	 * {@code #@ ImageJ ij} or {@code #@ LogService log}, are filled in by the
+	 * module preprocessors. All inputs are then bound in the context.
+	 * </p>
+	 *
+	 * @throws ScriptException if the script fails, or preprocessing is
+	 *           canceled because an input cannot be resolved.
+	 */
+	Object run(File file, Map<String, ?> inputs, ScriptContext context)
+		throws IOException, ScriptException;
+
+	/**
+	 * Runs the given script file, writing its output to {@link System#out} and
+	 * {@link System#err}.
+	 *
+	 * @see #run(File, Map, ScriptContext)
+	 */
+	default Object run(final File file, final Map<String, ?> inputs)
+		throws IOException, ScriptException
+	{
+		return run(file, inputs, new SimpleScriptContext());
+	}
+
+	/**
+	 * Gets the total compile time avoided by cache hits, in milliseconds, based
+	 * on how long each script originally took to compile.
+	 */
+	long getTimeSaved();
+
+	/** Discards all compiled scripts held in memory. */
+	void clearCache();
+
+}
@@ -0,0 +1,199 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2015 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+
+package net.imagej.threshold;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
+
+import net.imagej.event.DatasetDeletedEvent;
+import net.imagej.event.DatasetUpdatedEvent;
+import net.imagej.util.Parallel;
+import net.imagej.util.SourceCache;
+import net.imglib2.Cursor;
+import net.imglib2.Interval;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.view.Views;
+
+import org.scijava.event.EventHandler;
+import org.scijava.plugin.Parameter;
+import org.scijava.plugin.Plugin;
+import org.scijava.service.AbstractService;
+import org.scijava.service.Service;
+import org.scijava.thread.ThreadService;
+
+/**
+ * Default implementation of {@link ThresholdHistogramService}.
+ */
+@Plugin(type = Service.class)
+public class DefaultThresholdHistogramService extends AbstractService
+	implements ThresholdHistogramService
+{
+
+	/**
+	 * Maximum total size of the cached histograms, in bytes. A 16-bit plane
+	 * histogram of 65536 bins takes 512 KB, so this holds 128 of them.
+	 */
+	private static final long MAX_CACHE_BYTES = 64L << 20;
+
+	@Parameter
+	private ThreadService threadService;
+
+	@Parameter
+	private ThresholdService thresholdService;
+
+	private final SourceCache<long[]> cache = new SourceCache<>(MAX_CACHE_BYTES,
+		histogram -> (long) histogram.length * Long.BYTES, long[]::clone);
+
+	// -- ThresholdHistogramService methods --
+
+	@Override
+	public long[] histogram(
+		final RandomAccessibleInterval<? extends RealType<?>> source,
+		final int bins, final double min, final double max)
+	{
+		return cache.get(source, () -> build(source, bins, min, max), bins, min,
+			max);
+	}
+
+	@Override
+	public long[] planeHistogram(
+		final RandomAccessibleInterval<? extends RealType<?>> source,
+		final int bins, final double min, final double max,
+		final long... position)
+	{
+		RandomAccessibleInterval<? extends RealType<?>> plane = source;
+		final long[] pos = new long[Math.max(0, source.numDimensions() - 2)];
+		for (int d = source.numDimensions() - 1; d >= 2; d--) {
+			pos[d - 2] = d - 2 < position.length ? position[d - 2] : source.min(d);
+			if (pos[d - 2] < source.min(d) || pos[d - 2] > source.max(d)) {
+				throw new IllegalArgumentException("Position " + pos[d - 2] +
+					" is out of bounds for dimension " + d);
+			}
+			plane = Views.hyperSlice(plane, d, pos[d - 2]);
+		}
+		final RandomAccessibleInterval<? extends RealType<?>> data = plane;
+		return cache.get(source, () -> build(data, bins, min, max), bins, min,
+			max, pos);
+	}
+
+	@Override
+	public int threshold(final String methodName, final long[] histogram) {
+		final ThresholdMethod method =
+			thresholdService.getThresholdMethod(methodName);
+		if (method == null) {
+			throw new IllegalArgumentException("No such threshold method: " +
+				methodName);
+		}
+		// NB: Methods are free to modify the histogram they are given.
+		return method.getThreshold(histogram.clone());
+	}
+
+	@Override
+	public void clearCache() {
+		cache.clear();
+	}
+
+	@Override
+	public void invalidate(final Object source) {
+		cache.invalidate(source);
+	}
+
+	// -- CacheStatistics methods --
+
+	@Override
+	public long getHits() {
+		return cache.getHits();
+	}
+
+	@Override
+	public long getMisses() {
+		return cache.getMisses();
+	}
+
+	// -- Event handlers --
+
+	@EventHandler
+	protected void onEvent(final DatasetUpdatedEvent evt) {
+		invalidate(evt.getObject());
+	}
+
+	@EventHandler
+	protected void onEvent(final DatasetDeletedEvent evt) {
+		invalidate(evt.getObject());
+	}
+
+	// -- Helper methods --
+
+	/**
+	 * Builds a histogram with one partial histogram per slab of the data, then
+	 * merges the partial histograms.
+	 */
+	private long[] build(final RandomAccessibleInterval<? extends RealType<?>> data,
+		final int bins, final double min, final double max)
+	{
+		if (bins <= 0) {
+			throw new IllegalArgumentException("Invalid bin count: " + bins);
+		}
+		if (!(max > min)) {
+			throw new IllegalArgumentException("Invalid range: [" + min + ", " +
+				max + "]");
+		}
+		final double scale = bins / (max - min);
+		final List<Future<long[]>> futures = new ArrayList<>();
+		for (final Interval slab : Parallel.slabs(data)) {
+			futures.add(threadService.run(() -> {
+				final long[] partial = new long[bins];
+				final Cursor<? extends RealType<?>> c = //
+					Views.flatIterable(Views.interval(data, slab)).cursor();
+				while (c.hasNext()) {
+					final double v = c.next().getRealDouble();
+					if (!(v >= min && v <= max)) continue; // NB: also skips NaN
+					final int bin = (int) ((v - min) * scale);
+					partial[bin < bins ? bin : bins - 1]++;
+				}
+				return partial;
+			}));
+		}
+		final long[] histogram = new long[bins];
+		for (final Future<long[]> future : futures) {
+			final long[] partial = Parallel.get(future);
+			for (int i = 0; i < bins; i++) {
+				histogram[i] += partial[i];
+			}
+		}
+		return histogram;
+	}
+
+}
@@ -0,0 +1,99 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2015 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+
+package net.imagej.threshold;
+
+import net.imagej.ImageJService;
+import net.imagej.metrics.CacheStatistics;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.type.numeric.RealType;
+
+/**
+ * Interface for services that build and cache the histograms consumed by
+ * {@link ThresholdMethod}s.
+ * <p>
+ * Histograms are built in parallel (one partial histogram per thread, merged
+ * at the end) and cached by source identity, plane and bin settings, so that
+ * trying several threshold methods on the same data scans its pixels only
+ * once.
+ * </p>
+ * <p>
+ * {@link ThresholdService} and its threshold methods live in imagej-common and
+ * build no histograms of their own, so they do not consult this cache: only
+ * callers that get their histograms here and apply methods through
+ * {@link #threshold(String, long[])} share it.
+ * </p>
+ *
+ * @see ThresholdService
+ */
+public interface ThresholdHistogramService extends ImageJService,
+	CacheStatistics
+{
+
+	/**
+	 * Gets the histogram of all pixels of the given image.
+	 *
+	 * @param source The image to histogram.
+	 * @param bins Number of bins.
+	 * @param min Lower bound of the first bin.
+	 * @param max Upper bound of the last bin; values outside [min, max] are
+	 *          not counted.
+	 * @return A new array containing the bin counts.
+	 */
+	long[] histogram(RandomAccessibleInterval<? extends RealType<?>> source,
+		int bins, double min, double max);
+
+	/**
+	 * Gets the histogram of one XY plane of the given image.
+	 *
+	 * @param position Position along each non-XY dimension of the plane;
+	 *          missing values default to the minimum of the dimension.
+	 * @see #histogram(RandomAccessibleInterval, int, double, double)
+	 */
+	long[] planeHistogram(RandomAccessibleInterval<? extends RealType<?>> source,
+		int bins, double min, double max, long... position);
+
+	/**
+	 * Applies the named threshold method to the given histogram.
+	 *
+	 * @return The index of the threshold bin.
+	 * @throws IllegalArgumentException if there is no such threshold method.
+	 */
+	int threshold(String methodName, long[] histogram);
+
+	/** Discards all cached histograms. */
+	void clearCache();
+
+	/** Discards all cached histograms of the given source. */
+	void invalidate(Object source);
+
+}
@@ -0,0 +1,120 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2015 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+
+package net.imagej.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import net.imglib2.FinalInterval;
+import net.imglib2.Interval;
+
+/**
+ * Utility methods for splitting work into about one task per available
+ * processor.
+ * <p>
+ * The {@link org.scijava.thread.ThreadService} runs each task on a thread of
+ * its own, so work must be batched before it is submitted; submitting one
+ * task per plane of a large stack would start as many threads.
+ * </p>
+ */
+public final class Parallel {
+
+	private Parallel() {
+		// prevent instantiation of utility class
+	}
+
+	/**
+	 * Gets the number of tasks to split work of the given size into: one per
+	 * available processor, but never more than the size itself.
+	 */
+	public static int taskCount(final long size) {
+		return (int) Math.max(1, Math.min(size, Runtime.getRuntime()
+			.availableProcessors()));
+	}
+
+	/**
+	 * Splits {@code [0, size)} into {@link #taskCount(long)} contiguous batches.
+	 *
+	 * @return The batch boundaries; batch {@code i} spans
+	 *         {@code [bounds[i], bounds[i + 1])}.
+	 */
+	public static long[] batches(final long size) {
+		final int count = taskCount(size);
+		final long[] bounds = new long[count + 1];
+		for (int i = 0; i <= count; i++) {
+			bounds[i] = size * i / count;
+		}
+		return bounds;
+	}
+
+	/**
+	 * Splits the given interval along its last dimension into
+	 * {@link #taskCount(long)} slabs.
+	 */
+	public static List<Interval> slabs(final Interval interval) {
+		final int d = interval.numDimensions() - 1;
+		final long[] bounds = batches(interval.dimension(d));
+		final List<Interval> slabs = new ArrayList<>(bounds.length - 1);
+		for (int i = 0; i < bounds.length - 1; i++) {
+			final long[] min = new long[d + 1], max = new long[d + 1];
+			interval.min(min);
+			interval.max(max);
+			min[d] = interval.min(d) + bounds[i];
+			max[d] = interval.min(d) + bounds[i + 1] - 1;
+			slabs.add(new FinalInterval(min, max));
+		}
+		return slabs;
+	}
+
+	/**
+	 * Waits for the given task, rethrowing its runtime exceptions unchanged and
+	 * wrapping anything else in an {@link IllegalStateException}.
+	 */
+	public static <T> T get(final Future<T> future) {
+		try {
+			return future.get();
+		}
+		catch (final InterruptedException exc) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException(exc);
+		}
+		catch (final ExecutionException exc) {
+			final Throwable cause = exc.getCause();
+			if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+			throw new IllegalStateException(cause);
+		}
+	}
+
+}
@@ -0,0 +1,221 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2015 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+
+package net.imagej.util;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+import java.util.function.UnaryOperator;
+
+import net.imagej.Dataset;
+import net.imagej.metrics.CacheStatistics;
+
+/**
+ * A least-recently-used cache of values derived from image data, bounded by
+ * the total size of its values in bytes.
+ * <p>
+ * Entries are keyed by the identity of their source together with a list of
+ * parameters. Sources are only weakly referenced, so that cached values do not
+ * keep large images alive; entries of collected sources are dropped. Values
+ * are copied on the way out, so callers may modify what they get.
+ * </p>
+ *
+ * @param <V> The type of cached values.
+ */
+public class SourceCache<V> implements CacheStatistics {
+
+	private final long capacity;
+	private final ToLongFunction<? super V> weigher;
+	private final UnaryOperator<V> copier;
+
+	private final Map<Key, V> entries = new LinkedHashMap<>(16, 0.75f, true);
+	private final ReferenceQueue<Object> cleared = new ReferenceQueue<>();
+	private long weight;
+
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+
+	/**
+	 * Creates a cache.
+	 *
+	 * @param capacity Maximum total size of the cached values, in bytes.
+	 * @param weigher Gets the size of a value, in bytes.
+	 * @param copier Copies a value, so that callers cannot modify cached ones.
+	 */
+	public SourceCache(final long capacity,
+		final ToLongFunction<? super V> weigher, final UnaryOperator<V> copier)
+	{
+		this.capacity = capacity;
+		this.weigher = weigher;
+		this.copier = copier;
+	}
+
+	/**
+	 * Gets a copy of the value for the given source and parameters, computing
+	 * it if it is not cached.
+	 * <p>
+	 * The value is computed outside the cache's lock, so that several values
+	 * can be computed in parallel.
+	 * </p>
+	 *
+	 * @param source The source the value is derived from.
+	 * @param compute Computes the value on a cache miss.
+	 * @param parameters Further key parameters, compared by value (including
+	 *          arrays).
+	 */
+	public V get(final Object source, final Supplier<? extends V> compute,
+		final Object... parameters)
+	{
+		final Key key = new Key(source, parameters, cleared);
+		synchronized (this) {
+			final V value = entries.get(key);
+			if (value != null) {
+				hits.increment();
+				return copier.apply(value);
+			}
+		}
+		misses.increment();
+		final V value = compute.get();
+		final long w = weigher.applyAsLong(value);
+		if (w <= capacity) {
+			synchronized (this) {
+				expunge();
+				final V previous = entries.put(key, value);
+				if (previous != null) weight -= weigher.applyAsLong(previous);
+				weight += w;
+				final Iterator<V> iter = entries.values().iterator();
+				while (weight > capacity && iter.hasNext()) {
+					weight -= weigher.applyAsLong(iter.next());
+					iter.remove();
+				}
+			}
+		}
+		return copier.apply(value);
+	}
+
+	/** Removes all entries. */
+	public synchronized void clear() {
+		entries.clear();
+		weight = 0;
+	}
+
+	/**
+	 * Removes the entries derived from the given source. Invalidating a
+	 * {@link Dataset} also invalidates its underlying image.
+	 */
+	public synchronized void invalidate(final Object source) {
+		expunge();
+		final Object img = source instanceof Dataset ? //
+			((Dataset) source).getImgPlus() : null;
+		final Iterator<Map.Entry<Key, V>> iter = entries.entrySet().iterator();
+		while (iter.hasNext()) {
+			final Map.Entry<Key, V> entry = iter.next();
+			final Object s = entry.getKey().get();
+			if (s == source || s != null && s == img) {
+				weight -= weigher.applyAsLong(entry.getValue());
+				iter.remove();
+			}
+		}
+	}
+
+	/** Gets the total size of the cached values, in bytes. */
+	public synchronized long getWeight() {
+		return weight;
+	}
+
+	// -- CacheStatistics methods --
+
+	@Override
+	public long getHits() {
+		return hits.sum();
+	}
+
+	@Override
+	public long getMisses() {
+		return misses.sum();
+	}
+
+	// -- Helper methods --
+
+	/** Drops the entries whose sources have been garbage collected. */
+	private void expunge() {
+		Object ref;
+		while ((ref = cleared.poll()) != null) {
+			final V value = entries.remove(ref);
+			if (value != null) weight -= weigher.applyAsLong(value);
+		}
+	}
+
+	// -- Helper classes --
+
+	/**
+	 * Cache key combining the identity of a source with the parameters of the
+	 * derived value.
+	 */
+	private static class Key extends WeakReference<Object> {
+
+		private final int hash;
+		private final Object[] parameters;
+
+		public Key(final Object source, final Object[] parameters,
+			final ReferenceQueue<Object> queue)
+		{
+			super(source, queue);
+			this.parameters = parameters.clone();
+			hash = 31 * System.identityHashCode(source) + //
+				Arrays.deepHashCode(parameters);
+		}
+
+		@Override
+		public boolean equals(final Object o) {
+			if (this == o) return true;
+			if (!(o instanceof Key)) return false;
+			final Key key = (Key) o;
+			final Object s = get();
+			return s != null && s == key.get() && //
+				Arrays.deepEquals(parameters, key.parameters);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+	}
+
+}
@@ -78,6 +78,7 @@ public void testServices() {
 		services.add(net.imagej.DefaultDatasetService.class);
 		services.add(net.imagej.DefaultImgPlusService.class);
 		services.add(net.imagej.animation.DefaultAnimationService.class);
+		services.add(net.imagej.autoscale.DefaultApproximateAutoscaleService.class);
 		services.add(net.imagej.autoscale.DefaultAutoscaleService.class);
 		services.add(net.imagej.display.DefaultImageDisplayService.class);
 		services.add(net.imagej.display.DefaultOverlayService.class);
@@ -89,12 +90,18 @@ public void testServices() {
 		services.add(net.imagej.lut.DefaultLUTService.class);
 		services.add(net.imagej.measure.DefaultMeasurementService.class);
 		services.add(net.imagej.measure.DefaultStatisticsService.class);
+		services.add(net.imagej.measure.DefaultStreamingStatisticsService.class);
+		services.add(net.imagej.metrics.DefaultMetricsService.class);
+		services.add(net.imagej.notebook.DefaultThumbnailService.class);
+		services.add(net.imagej.operator.DefaultArithmeticService.class);
 		services.add(net.imagej.operator.DefaultCalculatorService.class);
 		services.add(net.imagej.ops.DefaultNamespaceService.class);
 		services.add(net.imagej.ops.DefaultOpMatchingService.class);
 		services.add(net.imagej.ops.DefaultOpService.class);
 		services.add(net.imagej.render.DummyRenderingService.class);
 		services.add(net.imagej.sampler.DefaultSamplerService.class);
+		services.add(net.imagej.script.DefaultScriptCacheService.class);
+		services.add(net.imagej.threshold.DefaultThresholdHistogramService.class);
 		services.add(net.imagej.threshold.DefaultThresholdService.class);
 		services.add(net.imagej.types.DefaultDataTypeService.class);
 		services.add(net.imagej.ui.DefaultImageJUIService.class);
@@ -0,0 +1,170 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2015 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+
+package net.imagej.autoscale;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import net.imagej.Dataset;
+import net.imagej.DatasetService;
+import net.imagej.ImgPlus;
+import net.imagej.event.DatasetUpdatedEvent;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.type.numeric.real.FloatType;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.scijava.Context;
+import org.scijava.event.EventService;
+
+/**
+ * Tests {@link DefaultApproximateAutoscaleService} and {@link RangeTracker}.
+ */
+public class ApproximateAutoscaleServiceTest {
+
+	private Context context;
+	private ApproximateAutoscaleService autoscaleService;
+
+	@Before
+	public void setUp() {
+		context = new Context(ApproximateAutoscaleService.class,
+			DatasetService.class);
+		autoscaleService = context.service(ApproximateAutoscaleService.class);
+	}
+
+	@After
+	public void tearDown() {
+		context.dispose();
+	}
+
+	@Test
+	public void testEstimateExact() {
+		final float[] data = ramp(10 * 10 * 3);
+		final EstimatedRange range =
+			autoscaleService.estimate(ArrayImgs.floats(data, 10, 10, 3), 1000);
+		assertTrue(range.isExact());
+		assertEquals(300, range.getSampleCount());
+		assertEquals(0, range.getMin(), 0);
+		assertEquals(299, range.getMax(), 0);
+		assertEquals(0, range.getOutlierFraction(0.95), 0);
+	}
+
+	@Test
+	public void testEstimateSampled() {
+		final float[] data = ramp(200 * 200 * 4);
+		final EstimatedRange range =
+			autoscaleService.estimate(ArrayImgs.floats(data, 200, 200, 4), 1000);
+		assertFalse(range.isExact());
+		assertEquals(1000, range.getSampleCount());
+		// Stratification guarantees a sample from the first and last runs.
+		assertTrue(range.getMin() >= 0 && range.getMin() < 160);
+		assertTrue(range.getMax() < data.length && range.getMax() >= 159840);
+		final double f = range.getOutlierFraction(0.95);
+		assertTrue(f > 0 && f < 0.01);
+	}
+
+	@Test
+	public void testRefine() throws Exception {
+		final float[] data = ramp(4 * 4 * 3);
+		final List<DataRange> updates = new ArrayList<>();
+		final RangeTracker tracker = autoscaleService.refine(
+			ArrayImgs.floats(data, 4, 4, 3), updates::add).get();
+		assertTrue(tracker.isComplete());
+		assertEquals(3, updates.size());
+		assertEquals(15, updates.get(0).getMax(), 0);
+		assertEquals(31, updates.get(1).getMax(), 0);
+		assertEquals(47, tracker.getRange().getMax(), 0);
+	}
+
+	@Test
+	public void testPlaneModified() {
+		final float[] data = ramp(4 * 4 * 3);
+		final Img<FloatType> img = ArrayImgs.floats(data, 4, 4, 3);
+		final RangeTracker tracker = new RangeTracker(img);
+		assertEquals(3, tracker.getPlaneCount());
+		assertNull(tracker.getRange());
+		for (int p = 0; p < tracker.getPlaneCount(); p++) {
+			tracker.scan(p);
+		}
+		assertEquals(0, tracker.getRange().getMin(), 0);
+
+		data[20] = -5;
+		data[40] = 100;
+		// Only the rescanned plane contributes its new values.
+		assertEquals(-5, tracker.planeModified(1).getMin(), 0);
+		assertEquals(47, tracker.getRange().getMax(), 0);
+		assertEquals(100, tracker.planeModified(2).getMax(), 0);
+	}
+
+	@Test
+	public void testDatasetUpdated() throws Exception {
+		final float[] data = ramp(4 * 4 * 3);
+		final Dataset dataset = context.service(DatasetService.class).create(
+			new ImgPlus<>(ArrayImgs.floats(data, 4, 4, 3)));
+		final List<DataRange> ranges = new ArrayList<>();
+		final RangeTracker tracker = autoscaleService.refine(dataset,
+			ranges::add).get();
+		assertEquals(47, tracker.getRange().getMax(), 0);
+		assertFalse(tracker.isStale());
+		ranges.clear();
+
+		// NB: The update only marks the tracker stale; nothing is rescanned.
+		data[40] = 100;
+		context.service(EventService.class).publish(new DatasetUpdatedEvent(
+			dataset, false));
+		assertTrue(tracker.isStale());
+		assertEquals(1, ranges.size());
+		assertEquals(47, ranges.get(0).getMax(), 0);
+
+		assertEquals(100, tracker.planeModified(2).getMax(), 0);
+		assertFalse(tracker.isStale());
+	}
+
+	// -- Helper methods --
+
+	private static float[] ramp(final int length) {
+		final float[] data = new float[length];
+		for (int i = 0; i < data.length; i++) {
+			data[i] = i;
+		}
+		return data;
+	}
+
+}
@@ -0,0 +1,310 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2015 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+
+package net.imagej.daemon;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import javax.script.AbstractScriptEngine;
+import javax.script.Bindings;
+import javax.script.ScriptContext;
+import javax.script.ScriptEngine;
+import javax.script.ScriptEngineFactory;
+import javax.script.ScriptException;
+import javax.script.SimpleBindings;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.scijava.Context;
+import org.scijava.plugin.PluginInfo;
+import org.scijava.plugin.PluginService;
+import org.scijava.script.AbstractScriptLanguage;
+import org.scijava.script.ScriptLanguage;
+
+/**
+ * Tests {@link JobServer}.
+ */
+public class JobServerTest {
+
+	@Rule
+	public final TemporaryFolder folder = new TemporaryFolder();
+
+	private Context context;
+	private JobServer server;
+	private File daemonFile;
+	private int port;
+	private String token;
+
+	@Before
+	public void setUp() throws IOException {
+		daemonFile = new File(folder.getRoot(), "daemon.properties");
+		System.setProperty(DaemonClient.DAEMON_FILE_PROPERTY, daemonFile
+			.getPath());
+		context = new Context();
+		context.service(PluginService.class).addPlugin(new PluginInfo<>(
+			TestLanguage.class, ScriptLanguage.class));
+		TestEngine.started = new CountDownLatch(1);
+		server = new JobServer(context, 0, 1, 10000);
+		port = server.start();
+
+		final Properties info = new Properties();
+		try (final InputStream in = new FileInputStream(daemonFile)) {
+			info.load(in);
+		}
+		assertEquals(port, Integer.parseInt(info.getProperty("port")));
+		token = info.getProperty("token");
+	}
+
+	@After
+	public void tearDown() {
+		server.close();
+		context.dispose();
+		System.clearProperty(DaemonClient.DAEMON_FILE_PROPERTY);
+	}
+
+	@Test
+	public void testOp() throws IOException {
+		final String response = DaemonClient.send(port, new DaemonRequest().set(
+			"token", token).set("type", "op").setBody("math.add\n1\n2\n"));
+		assertEquals(DaemonClient.OK + "\n3", response);
+	}
+
+	@Test
+	public void testDenied() throws IOException {
+		final String response = DaemonClient.send(port, new DaemonRequest().set(
+			"token", "wrong").set("type", "op").setBody("math.add\n1\n2\n"));
+		assertEquals("DENIED\n", response);
+	}
+
+	@Test
+	public void testDeniedBeforeBody() throws IOException {
+		// NB: The body never ends, yet the server answers after the headers.
+		try (final Socket socket = new Socket(InetAddress.getLoopbackAddress(),
+			port))
+		{
+			socket.setSoTimeout(5000);
+			final OutputStream out = socket.getOutputStream();
+			out.write("token: wrong\ntype: op\n\nmath.add\n".getBytes(
+				StandardCharsets.UTF_8));
+			out.flush();
+			assertEquals("DENIED\n", new String(DaemonRequest.readFully(socket
+				.getInputStream()), StandardCharsets.UTF_8));
+		}
+	}
+
+	@Test
+	public void testDaemonFileReplaced() throws IOException {
+		// NB: Another server has taken over the daemon file.
+		final Properties info = new Properties();
+		info.setProperty("port", "1");
+		info.setProperty("token", "other");
+		try (final OutputStream out = new FileOutputStream(daemonFile)) {
+			info.store(out, null);
+		}
+		server.close();
+		assertTrue(daemonFile.exists());
+	}
+
+	@Test
+	public void testUnknownType() throws IOException {
+		final String response = DaemonClient.send(port, new DaemonRequest().set(
+			"token", token).set("type", "bogus"));
+		assertTrue(response.startsWith("ERROR\n"));
+	}
+
+	@Test
+	public void testScript() throws IOException {
+		final String response = DaemonClient.send(port, script(
+			"print Hello\nreturn $x").set("inputs", "x=42"));
+		assertEquals(DaemonClient.OK + "\nHello\n42\n", response);
+	}
+
+	@Test
+	public void testTimeout() throws IOException {
+		final String response = DaemonClient.send(port, script("spin 500").set(
+			"timeout", "100"));
+		assertEquals("TIMEOUT\n", response);
+
+		// NB: The runaway job ignores interruption, so it keeps its slot.
+		final String busy = DaemonClient.send(port, script("print Hello").set(
+			"timeout", "100"));
+		assertEquals("BUSY\n", busy);
+	}
+
+	@Test
+	public void testBusy() throws Exception {
+		final Thread client = new Thread(() -> {
+			try {
+				DaemonClient.send(port, script("sleep 10000"));
+			}
+			catch (final IOException exc) {
+				// NB: The server is closed while the job still runs.
+			}
+		});
+		client.start();
+		assertTrue(TestEngine.started.await(10, TimeUnit.SECONDS));
+
+		final String response = DaemonClient.send(port, script("print Hello")
+			.set("timeout", "100"));
+		assertEquals("BUSY\n", response);
+		server.close();
+		client.join();
+	}
+
+	@Test
+	public void testShutdown() throws IOException, InterruptedException {
+		final String response = DaemonClient.send(port, new DaemonRequest().set(
+			"token", token).set("type", "shutdown"));
+		assertEquals(DaemonClient.OK + "\n", response);
+		server.awaitShutdown();
+		assertFalse(daemonFile.exists());
+	}
+
+	// -- Helper methods --
+
+	private DaemonRequest script(final String body) {
+		return new DaemonRequest().set("token", token).set("type", "script").set(
+			"language", "test").setBody(body);
+	}
+
+	// -- Helper classes --
+
+	/**
+	 * A trivial language whose lines are {@code print <text>},
+	 * {@code return <text>}, {@code sleep <ms>} or {@code spin <ms>}, with
+	 * {@code $name} replaced by the value of each bound variable. Unlike
+	 * {@code sleep}, {@code spin} ignores interruption.
+	 */
+	public static class TestLanguage extends AbstractScriptLanguage {
+
+		@Override
+		public String getLanguageName() {
+			return "Test";
+		}
+
+		@Override
+		public List<String> getExtensions() {
+			return Collections.singletonList("test");
+		}
+
+		@Override
+		public ScriptEngine getScriptEngine() {
+			return new TestEngine(this);
+		}
+	}
+
+	private static class TestEngine extends AbstractScriptEngine {
+
+		private static volatile CountDownLatch started;
+
+		private final ScriptEngineFactory factory;
+
+		public TestEngine(final ScriptEngineFactory factory) {
+			this.factory = factory;
+		}
+
+		@Override
+		public Object eval(final String script, final ScriptContext ctx)
+			throws ScriptException
+		{
+			started.countDown();
+			final Bindings bindings = ctx.getBindings(ScriptContext.ENGINE_SCOPE);
+			Object result = null;
+			for (String line : script.split("\n")) {
+				for (final String key : bindings.keySet()) {
+					line = line.replace("$" + key, "" + bindings.get(key));
+				}
+				final int space = line.indexOf(' ');
+				if (space < 0) continue;
+				final String command = line.substring(0, space);
+				final String arg = line.substring(space + 1);
+				try {
+					if ("print".equals(command)) ctx.getWriter().write(arg + "\n");
+					else if ("return".equals(command)) result = arg;
+					else if ("sleep".equals(command)) Thread.sleep(Long.parseLong(arg));
+					else if ("spin".equals(command)) {
+						final long end = System.currentTimeMillis() + Long.parseLong(arg);
+						while (System.currentTimeMillis() < end) {
+							// NB: Busy-wait, ignoring interruption.
+						}
+					}
+				}
+				catch (final IOException | InterruptedException exc) {
+					throw new ScriptException(exc);
+				}
+			}
+			return result;
+		}
+
+		@Override
+		public Object eval(final Reader reader, final ScriptContext ctx)
+			throws ScriptException
+		{
+			return eval(new BufferedReader(reader).lines().collect(
+				Collectors.joining("\n")), ctx);
+		}
+
+		@Override
+		public Bindings createBindings() {
+			return new SimpleBindings();
+		}
+
+		@Override
+		public ScriptEngineFactory getFactory() {
+			return factory;
+		}
+	}
+
+}
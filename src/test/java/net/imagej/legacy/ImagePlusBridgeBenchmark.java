@@ -0,0 +1,97 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2015 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+
+package net.imagej.legacy;
+
+import ij.ImagePlus;
+import ij.ImageStack;
+
+import net.imagej.Dataset;
+import net.imagej.DatasetService;
+
+import org.scijava.Context;
+
+/**
+ * Compares copying against {@link ImagePlusBridge} when moving a large 16-bit
+ * stack between ImageJ 1.x and {@link Dataset}s.
+ * <p>
+ * Usage: {@code ImagePlusBridgeBenchmark [width height depth]}; defaults to
+ * 2048 x 2048 x 64.
+ * </p>
+ */
+public class ImagePlusBridgeBenchmark {
+
+	public static void main(final String... args) {
+		final int w = args.length > 0 ? Integer.parseInt(args[0]) : 2048;
+		final int h = args.length > 1 ? Integer.parseInt(args[1]) : 2048;
+		final int z = args.length > 2 ? Integer.parseInt(args[2]) : 64;
+
+		final ImageStack stack = new ImageStack(w, h);
+		for (int i = 0; i < z; i++) {
+			stack.addSlice(null, new short[w * h]);
+		}
+		final ImagePlus imp = new ImagePlus("benchmark", stack);
+		System.out.println("Stack: " + w + " x " + h + " x " + z);
+
+		final Context context = new Context(DatasetService.class);
+		try {
+			final DatasetService datasetService =
+				context.service(DatasetService.class);
+
+			long start = System.nanoTime();
+			final Dataset copied = ImagePlusBridge.wrap(datasetService, imp
+				.duplicate());
+			report("ImagePlus -> Dataset, copied", start);
+
+			start = System.nanoTime();
+			final Dataset shared = ImagePlusBridge.wrap(datasetService, imp);
+			report("ImagePlus -> Dataset, shared", start);
+
+			start = System.nanoTime();
+			ImagePlusBridge.wrap(copied).duplicate();
+			report("Dataset -> ImagePlus, copied", start);
+
+			start = System.nanoTime();
+			ImagePlusBridge.wrap(shared);
+			report("Dataset -> ImagePlus, shared", start);
+		}
+		finally {
+			context.dispose();
+		}
+	}
+
+	private static void report(final String label, final long start) {
+		final long ms = (System.nanoTime() - start) / 1000000;
+		System.out.println(label + ": " + ms + " ms");
+	}
+
+}
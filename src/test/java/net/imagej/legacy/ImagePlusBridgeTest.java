@@ -0,0 +1,194 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2015 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+
+package net.imagej.legacy;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import ij.ImagePlus;
+import ij.ImageStack;
+
+import net.imagej.Dataset;
+import net.imagej.DatasetService;
+import net.imagej.ImgPlus;
+import net.imagej.axis.Axes;
+import net.imagej.axis.AxisType;
+import net.imglib2.RandomAccess;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.planar.PlanarImg;
+import net.imglib2.img.planar.PlanarImgs;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.scijava.Context;
+
+/**
+ * Tests {@link ImagePlusBridge}.
+ */
+public class ImagePlusBridgeTest {
+
+	private Context context;
+	private DatasetService datasetService;
+
+	@Before
+	public void setUp() {
+		context = new Context(DatasetService.class);
+		datasetService = context.service(DatasetService.class);
+	}
+
+	@After
+	public void tearDown() {
+		context.dispose();
+	}
+
+	@Test
+	public void testImagePlusToDataset() {
+		final ImageStack stack = new ImageStack(4, 3);
+		for (int z = 0; z < 2; z++) {
+			stack.addSlice(null, new short[12]);
+		}
+		final ImagePlus imp = new ImagePlus("stack", stack);
+		final Dataset dataset = ImagePlusBridge.wrap(datasetService, imp);
+		assertSame(stack.getPixels(1), plane(dataset, 0));
+		assertSame(stack.getPixels(2), plane(dataset, 1));
+
+		// Writes through the dataset are seen by ImageJ 1.x.
+		final RandomAccess<? extends RealType<?>> ra =
+			dataset.getImgPlus().randomAccess();
+		ra.setPosition(new long[] { 1, 2, 1 });
+		ra.get().setReal(1234);
+		assertEquals(1234, imp.getStack().getProcessor(2).get(1, 2));
+	}
+
+	@Test
+	public void testDatasetToImagePlus() {
+		final Dataset dataset = dataset(PlanarImgs.unsignedShorts(4, 3, 2, 5),
+			Axes.X, Axes.Y, Axes.Z, Axes.TIME);
+		assertTrue(ImagePlusBridge.isShareable(dataset));
+		final ImagePlus imp = ImagePlusBridge.wrap(dataset);
+		assertEquals(1, imp.getNChannels());
+		assertEquals(2, imp.getNSlices());
+		assertEquals(5, imp.getNFrames());
+		for (int i = 0; i < 10; i++) {
+			assertSame(plane(dataset, i), imp.getStack().getPixels(i + 1));
+		}
+	}
+
+	@Test
+	public void testRoundTrip() {
+		final ImageStack stack = new ImageStack(2, 2);
+		stack.addSlice(null, new float[4]);
+		stack.addSlice(null, new float[4]);
+		final Dataset dataset =
+			ImagePlusBridge.wrap(datasetService, new ImagePlus("float", stack));
+		final ImagePlus imp = ImagePlusBridge.wrap(dataset);
+		assertSame(stack.getPixels(1), imp.getStack().getPixels(1));
+		assertSame(stack.getPixels(2), imp.getStack().getPixels(2));
+	}
+
+	@Test
+	public void testUnshareableLayouts() {
+		// Not planar.
+		final short[] data = new short[4 * 3 * 2];
+		data[12] = 42;
+		final Dataset arrayDataset = dataset(ArrayImgs.unsignedShorts(data, 4, 3,
+			2), Axes.X, Axes.Y, Axes.Z);
+		assertFalse(ImagePlusBridge.isShareable(arrayDataset));
+		final ImagePlus imp = ImagePlusBridge.wrap(arrayDataset);
+		assertEquals(2, imp.getStackSize());
+		assertEquals(42, imp.getStack().getProcessor(2).get(0, 0));
+
+		// Axes not in ImageJ 1.x order.
+		assertFalse(ImagePlusBridge.isShareable(dataset(PlanarImgs.unsignedShorts(
+			4, 3, 2, 2), Axes.X, Axes.Y, Axes.TIME, Axes.CHANNEL)));
+	}
+
+	@Test
+	public void testUnshareableAxisOrder() {
+		final Dataset dataset = dataset(PlanarImgs.unsignedShorts(4, 3, 2, 3),
+			Axes.X, Axes.Y, Axes.Z, Axes.CHANNEL);
+		assertFalse(ImagePlusBridge.isShareable(dataset));
+		final RandomAccess<? extends RealType<?>> ra =
+			dataset.getImgPlus().randomAccess();
+		for (int z = 0; z < 2; z++) {
+			for (int c = 0; c < 3; c++) {
+				ra.setPosition(new long[] { 1, 2, z, c });
+				ra.get().setReal(10 * z + c);
+			}
+		}
+
+		final ImagePlus imp = ImagePlusBridge.wrap(dataset);
+		assertEquals(3, imp.getNChannels());
+		assertEquals(2, imp.getNSlices());
+		assertEquals(1, imp.getNFrames());
+		for (int z = 0; z < 2; z++) {
+			for (int c = 0; c < 3; c++) {
+				final int n = imp.getStackIndex(c + 1, z + 1, 1);
+				assertEquals(10 * z + c, imp.getStack().getProcessor(n).get(1, 2));
+			}
+		}
+	}
+
+	@Test
+	public void testCopyOnWrite() {
+		final short[] data = new short[4 * 3 * 2];
+		final Dataset dataset = dataset(ArrayImgs.unsignedShorts(data, 4, 3, 2),
+			Axes.X, Axes.Y, Axes.Z);
+		final ImagePlus imp = ImagePlusBridge.wrap(dataset);
+		imp.getStack().getProcessor(2).set(0, 0, 999);
+
+		// Edits persist in ImageJ 1.x but leave the dataset unchanged.
+		assertEquals(999, imp.getStack().getProcessor(2).get(0, 0));
+		assertEquals(0, data[12]);
+	}
+
+	// -- Helper methods --
+
+	private Dataset dataset(final Img<UnsignedShortType> img,
+		final AxisType... axes)
+	{
+		return datasetService.create(new ImgPlus<>(img, "test", axes));
+	}
+
+	private static Object plane(final Dataset dataset, final int no) {
+		final PlanarImg<?, ?> img = (PlanarImg<?, ?>) dataset.getImgPlus().getImg();
+		return img.getPlane(no).getCurrentStorageArray();
+	}
+
+}
@@ -0,0 +1,162 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2015 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+
+package net.imagej.measure;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.Random;
+
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.type.numeric.integer.IntType;
+import net.imglib2.type.numeric.real.DoubleType;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.scijava.Context;
+
+/**
+ * Tests {@link DefaultStreamingStatisticsService} and
+ * {@link StatisticsAccumulator}.
+ */
+public class StreamingStatisticsServiceTest {
+
+	private Context context;
+	private StreamingStatisticsService statisticsService;
+
+	@Before
+	public void setUp() {
+		context = new Context(StreamingStatisticsService.class);
+		statisticsService = context.service(StreamingStatisticsService.class);
+	}
+
+	@After
+	public void tearDown() {
+		context.dispose();
+	}
+
+	@Test
+	public void testStatistics() {
+		final double[] data = random(64 * 48 * 5, 1);
+		final Img<DoubleType> img = ArrayImgs.doubles(data, 64, 48, 5);
+		assertMatches(data, statisticsService.statistics(img));
+	}
+
+	@Test
+	public void testRegions() {
+		final int w = 40, h = 30, regions = 7;
+		final double[] data = random(w * h, 2);
+		final int[] labels = new int[w * h];
+		for (int i = 0; i < labels.length; i++) {
+			labels[i] = i % (regions + 1);
+		}
+		final Img<IntType> labelImg = ArrayImgs.ints(labels, w, h);
+		final List<StatisticsAccumulator> stats = statisticsService.statistics(
+			ArrayImgs.doubles(data, w, h), labelImg, regions);
+		assertEquals(regions, stats.size());
+		for (int r = 1; r <= regions; r++) {
+			final double[] values = new double[w * h];
+			int n = 0;
+			for (int i = 0; i < labels.length; i++) {
+				if (labels[i] == r) values[n++] = data[i];
+			}
+			final double[] regionValues = new double[n];
+			System.arraycopy(values, 0, regionValues, 0, n);
+			assertMatches(regionValues, stats.get(r - 1));
+		}
+	}
+
+	@Test
+	public void testMergeIsStable() {
+		// Large offset with small spread defeats the naive sum-of-squares formula.
+		final StatisticsAccumulator a = new StatisticsAccumulator();
+		final StatisticsAccumulator b = new StatisticsAccumulator();
+		for (int i = 0; i < 1000; i++) {
+			(i % 2 == 0 ? a : b).add(1e9 + (i % 4));
+		}
+		a.merge(b);
+		assertEquals(1000, a.getCount());
+		assertEquals(1e9 + 1.5, a.getMean(), 1e-6);
+		assertEquals(1.2512512512512513, a.getVariance(), 1e-9);
+		assertEquals(1e9, a.getMin(), 0);
+		assertEquals(1e9 + 3, a.getMax(), 0);
+	}
+
+	@Test
+	public void testEmpty() {
+		final StatisticsAccumulator stats = new StatisticsAccumulator();
+		stats.merge(new StatisticsAccumulator());
+		assertEquals(0, stats.getCount());
+		assertTrue(Double.isNaN(stats.getMean()));
+		assertTrue(Double.isNaN(stats.getMin()));
+	}
+
+	// -- Helper methods --
+
+	private static double[] random(final int length, final long seed) {
+		final Random r = new Random(seed);
+		final double[] data = new double[length];
+		for (int i = 0; i < data.length; i++) {
+			data[i] = 1000 * r.nextDouble();
+		}
+		return data;
+	}
+
+	/** Compares against a straightforward two-pass computation. */
+	private static void assertMatches(final double[] values,
+		final StatisticsAccumulator stats)
+	{
+		double sum = 0, min = Double.POSITIVE_INFINITY;
+		double max = Double.NEGATIVE_INFINITY;
+		for (final double v : values) {
+			sum += v;
+			min = Math.min(min, v);
+			max = Math.max(max, v);
+		}
+		final double mean = sum / values.length;
+		double ss = 0;
+		for (final double v : values) {
+			ss += (v - mean) * (v - mean);
+		}
+		assertEquals(values.length, stats.getCount());
+		assertEquals(sum, stats.getSum(), 1e-6);
+		assertEquals(mean, stats.getMean(), 1e-9);
+		assertEquals(ss / (values.length - 1), stats.getVariance(), 1e-6);
+		assertEquals(min, stats.getMin(), 0);
+		assertEquals(max, stats.getMax(), 0);
+	}
+
+}
@@ -0,0 +1,194 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2015 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+
+package net.imagej.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Map;
+import java.util.Scanner;
+import java.util.Set;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import net.imagej.notebook.ThumbnailService;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.scijava.Context;
+import org.scijava.event.EventService;
+import org.scijava.module.DefaultMutableModule;
+import org.scijava.module.event.ModuleErroredEvent;
+import org.scijava.module.event.ModuleFinishedEvent;
+import org.scijava.module.event.ModuleStartedEvent;
+
+/**
+ * Tests {@link DefaultMetricsService}.
+ */
+public class MetricsServiceTest {
+
+	private Context context;
+	private MetricsService metricsService;
+
+	@Before
+	public void setUp() {
+		context = new Context(MetricsService.class, ThumbnailService.class);
+		metricsService = context.service(MetricsService.class);
+	}
+
+	@After
+	public void tearDown() {
+		context.dispose();
+	}
+
+	@Test
+	public void testCounter() {
+		final Counter counter = metricsService.counter("test.counter");
+		assertSame(counter, metricsService.counter("test.counter"));
+		counter.increment();
+		counter.add(41);
+		assertEquals(42L, metricsService.snapshot().get("test.counter"));
+	}
+
+	@Test
+	public void testTimer() {
+		assertEquals("done", metricsService.timed("test.timer", () -> "done"));
+		final LatencyHistogram timer = metricsService.timer("test.timer");
+		for (int i = 1; i <= 99; i++) {
+			timer.record(1000);
+		}
+		timer.record(5000000);
+		assertEquals(101, timer.getCount());
+		assertEquals(5, timer.getMax(), 0);
+		// 1000 ns falls into [512, 1024) ns.
+		assertEquals(1023e-6, timer.getPercentile(0.5), 1e-12);
+		assertEquals(5, timer.getPercentile(1), 0);
+
+		final Map<String, Number> snapshot = metricsService.snapshot();
+		assertEquals(101L, snapshot.get("test.timer.count"));
+		assertTrue(snapshot.containsKey("test.timer.p99_ms"));
+	}
+
+	@Test
+	public void testGaugeAndCacheStatistics() {
+		metricsService.gauge("test.gauge", () -> 2.5);
+		final ThumbnailService thumbnailService =
+			context.service(ThumbnailService.class);
+		final Img<UnsignedByteType> img = ArrayImgs.unsignedBytes(8, 8);
+		thumbnailService.thumbnail(img, 4, 4);
+		thumbnailService.thumbnail(img, 4, 4);
+
+		final Map<String, Number> snapshot = metricsService.snapshot();
+		assertEquals(2.5, snapshot.get("test.gauge"));
+		assertEquals(1L, snapshot.get("cache.DefaultThumbnailService.hits"));
+		assertEquals(1L, snapshot.get("cache.DefaultThumbnailService.misses"));
+	}
+
+	@Test
+	public void testModuleErrored() {
+		final DefaultMutableModule module = new DefaultMutableModule();
+		module.getInfo().setName("failing step");
+		final EventService eventService = context.service(EventService.class);
+		eventService.publish(new ModuleStartedEvent(module));
+		eventService.publish(new ModuleErroredEvent(module,
+			new IllegalStateException()));
+		// NB: The errored run is forgotten, so a late finish records nothing.
+		eventService.publish(new ModuleFinishedEvent(module));
+
+		// NB: The space of the title is sanitized out of the name.
+		final Map<String, Number> snapshot = metricsService.snapshot();
+		assertEquals(1L, snapshot.get("module.failing_step.errors"));
+		assertFalse(snapshot.containsKey("module.failing_step.count"));
+	}
+
+	@Test
+	public void testExport() throws Exception {
+		metricsService.counter("test.export").increment();
+		assertTrue(metricsService.toText().contains("test.export 1\n"));
+		assertTrue(metricsService.toJSON().contains("\"test.export\":1"));
+
+		final MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+		final Set<ObjectName> names =
+			mbs.queryNames(new ObjectName("net.imagej:type=Metrics,*"), null);
+		assertFalse(names.isEmpty());
+		boolean found = false;
+		for (final ObjectName name : names) {
+			try {
+				found |= 1.0 == (Double) mbs.getAttribute(name, "test.export");
+			}
+			catch (final Exception exc) {
+				// NB: MBean of another context.
+			}
+		}
+		assertTrue(found);
+
+		final int port = metricsService.startEndpoint(0);
+		try {
+			final String json = get("http://127.0.0.1:" + port + "/metrics.json");
+			assertTrue(json.startsWith("{") && json.contains("\"test.export\":1"));
+			assertTrue(get("http://127.0.0.1:" + port + "/metrics").contains(
+				"test.export 1"));
+		}
+		finally {
+			metricsService.stopEndpoint();
+		}
+	}
+
+	// -- Helper methods --
+
+	private static String get(final String url) throws IOException {
+		final HttpURLConnection conn = (HttpURLConnection) new URL(url)
+			.openConnection();
+		try (final InputStream in = conn.getInputStream();
+				final Scanner scanner = new Scanner(in, "UTF-8"))
+		{
+			return scanner.useDelimiter("\\A").next();
+		}
+		finally {
+			conn.disconnect();
+		}
+	}
+
+}
@@ -0,0 +1,173 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2015 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+
+package net.imagej.notebook;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.basictypes.FloatArray;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+import net.imglib2.type.numeric.real.FloatType;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.scijava.Context;
+
+/**
+ * Tests {@link DefaultThumbnailService}.
+ */
+public class ThumbnailServiceTest {
+
+	private Context context;
+	private ThumbnailService thumbnailService;
+
+	@Before
+	public void setUp() {
+		context = new Context(ThumbnailService.class);
+		thumbnailService = context.service(ThumbnailService.class);
+	}
+
+	@After
+	public void tearDown() {
+		context.dispose();
+	}
+
+	@Test
+	public void testDownsample() {
+		final Img<UnsignedShortType> img = ramp(8, 4, 2);
+		final Img<FloatType> thumb = thumbnailService.thumbnail(img, 4, 4);
+		assertArrayEquals(new long[] { 4, 2 }, dims(thumb));
+		// Each output pixel averages a 2x2 block of the first plane.
+		assertArrayEquals(new float[] { 4.5f, 6.5f, 8.5f, 10.5f, 20.5f, 22.5f,
+			24.5f, 26.5f }, pixels(thumb), 0);
+
+		final Img<FloatType> second = thumbnailService.thumbnail(img, 4, 4, 1);
+		assertEquals(36.5f, pixels(second)[0], 0);
+	}
+
+	@Test
+	public void testNoUpsampling() {
+		final Img<FloatType> thumb =
+			thumbnailService.thumbnail(ramp(3, 2, 1), 100, 100);
+		assertArrayEquals(new long[] { 3, 2 }, dims(thumb));
+		assertArrayEquals(new float[] { 0, 1, 2, 3, 4, 5 }, pixels(thumb), 0);
+	}
+
+	@Test
+	public void testCache() {
+		final Img<UnsignedShortType> img = ramp(16, 16, 1);
+		final Img<FloatType> thumb = thumbnailService.thumbnail(img, 4, 4);
+		final float expected = thumb.firstElement().get();
+		assertEquals(0, thumbnailService.getHits());
+		assertEquals(1, thumbnailService.getMisses());
+
+		// NB: Modifying a thumbnail must not affect the cached one.
+		thumb.firstElement().set(-1);
+		final Img<FloatType> hit = thumbnailService.thumbnail(img, 4, 4);
+		assertNotSame(thumb, hit);
+		assertEquals(expected, hit.firstElement().get(), 0);
+		assertEquals(1, thumbnailService.getHits());
+
+		thumbnailService.thumbnail(img, 8, 8);
+		assertEquals(2, thumbnailService.getMisses());
+
+		thumbnailService.invalidate(img);
+		thumbnailService.thumbnail(img, 4, 4);
+		assertEquals(3, thumbnailService.getMisses());
+	}
+
+	@Test
+	public void testMosaicTooLarge() {
+		final List<Img<UnsignedShortType>> sources =
+			Collections.singletonList(ramp(4, 4, 1));
+		try {
+			thumbnailService.mosaic(sources, 65536, 65536, 65536);
+			fail("Expected an exception");
+		}
+		catch (final IllegalArgumentException exc) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testMosaic() {
+		final Img<FloatType> mosaic = thumbnailService.mosaic(Arrays.asList(
+			ramp(4, 4, 1), ramp(2, 2, 1), ramp(8, 8, 1)), 2, 2, 2);
+		assertArrayEquals(new long[] { 4, 4 }, dims(mosaic));
+		final float[] p = pixels(mosaic);
+		// Each tile is normalized to [0, 1]; the missing fourth tile stays 0.
+		assertEquals(0, p[0], 0);
+		assertEquals(1, p[5], 0);
+		assertEquals(0, p[2], 0);
+		assertEquals(1, p[7], 0);
+		assertEquals(0, p[8], 0);
+		assertEquals(1, p[13], 0);
+		assertEquals(0, p[15], 0);
+	}
+
+	// -- Helper methods --
+
+	private static Img<UnsignedShortType> ramp(final int w, final int h,
+		final int z)
+	{
+		final short[] data = new short[w * h * z];
+		for (int i = 0; i < data.length; i++) {
+			data[i] = (short) i;
+		}
+		return ArrayImgs.unsignedShorts(data, w, h, z);
+	}
+
+	private static long[] dims(final Img<?> img) {
+		final long[] dims = new long[img.numDimensions()];
+		img.dimensions(dims);
+		return dims;
+	}
+
+	private static float[] pixels(final Img<FloatType> img) {
+		@SuppressWarnings("unchecked")
+		final ArrayImg<FloatType, FloatArray> arrayImg =
+			(ArrayImg<FloatType, FloatArray>) img;
+		return arrayImg.update(null).getCurrentStorageArray();
+	}
+
+}
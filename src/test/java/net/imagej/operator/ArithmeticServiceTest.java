@@ -0,0 +1,174 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2015 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+
+package net.imagej.operator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import net.imglib2.Cursor;
+import net.imglib2.img.Img;
+import net.imglib2.img.ImgFactory;
+import net.imglib2.img.array.ArrayImgFactory;
+import net.imglib2.img.planar.PlanarImgFactory;
+import net.imglib2.type.NativeType;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.type.numeric.integer.ShortType;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+import net.imglib2.type.numeric.real.FloatType;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.scijava.Context;
+
+/**
+ * Tests that {@link DefaultArithmeticService}'s specialized kernels match the
+ * generic path exactly.
+ */
+public class ArithmeticServiceTest {
+
+	private static final long[] DIMS = { 37, 23, 5 };
+
+	private Context context;
+	private ArithmeticService arithmeticService;
+
+	@Before
+	public void setUp() {
+		context = new Context(ArithmeticService.class);
+		arithmeticService = context.service(ArithmeticService.class);
+	}
+
+	@After
+	public void tearDown() {
+		context.dispose();
+	}
+
+	@Test
+	public void testUnsignedByte() {
+		assertKernelsMatch(new UnsignedByteType());
+	}
+
+	@Test
+	public void testUnsignedShort() {
+		assertKernelsMatch(new UnsignedShortType());
+	}
+
+	@Test
+	public void testFloat() {
+		assertKernelsMatch(new FloatType());
+	}
+
+	@Test
+	public void testClamping() {
+		final Img<UnsignedByteType> a = create(false,
+			new UnsignedByteType(), 0);
+		final Img<UnsignedByteType> b = create(false,
+			new UnsignedByteType(), 1);
+		a.firstElement().set(200);
+		b.firstElement().set(100);
+		final Img<UnsignedByteType> out = a.factory().create(a);
+		arithmeticService.compute(BinaryArithmetic.ADD, a, b, out);
+		assertEquals(255, out.firstElement().get());
+		arithmeticService.compute(BinaryArithmetic.SUBTRACT, b, a, out);
+		assertEquals(0, out.firstElement().get());
+		arithmeticService.compute(BinaryArithmetic.AVERAGE, a, b, out);
+		assertEquals(150, out.firstElement().get());
+	}
+
+	@Test
+	public void testGenericFallback() {
+		final Img<ShortType> a = create(false, new ShortType(), 0);
+		final Img<ShortType> out = a.factory().create(a);
+		assertFalse(arithmeticService.isAccelerated(a, a, out));
+		arithmeticService.compute(BinaryArithmetic.SUBTRACT, a, a, out);
+		for (final ShortType t : out) {
+			assertEquals(0, t.get());
+		}
+	}
+
+	// -- Helper methods --
+
+	private <T extends RealType<T> & NativeType<T>> void assertKernelsMatch(
+		final T type)
+	{
+		assertKernelsMatch(false, type);
+		assertKernelsMatch(true, type);
+	}
+
+	private <T extends RealType<T> & NativeType<T>> void assertKernelsMatch(
+		final boolean planar, final T type)
+	{
+		final Img<T> a = create(planar, type, 1);
+		final Img<T> b = create(planar, type, 2);
+		final Img<T> fast = a.factory().create(a);
+		final Img<T> generic = a.factory().create(a);
+		assertTrue(arithmeticService.isAccelerated(a, b, fast));
+		for (final BinaryArithmetic op : BinaryArithmetic.values()) {
+			arithmeticService.compute(op, a, b, fast);
+			arithmeticService.computeGeneric(op, a, b, generic);
+			final Cursor<T> cf = fast.cursor();
+			final Cursor<T> cg = generic.cursor();
+			while (cf.hasNext()) {
+				final double expected = cg.next().getRealDouble();
+				final double actual = cf.next().getRealDouble();
+				assertEquals(op + " " + type.getClass().getSimpleName(), expected,
+					actual, 0);
+			}
+		}
+	}
+
+	/**
+	 * Creates an image of random values spanning the type's range, with plenty
+	 * of zeros to exercise division by zero.
+	 */
+	private static <T extends RealType<T> & NativeType<T>> Img<T> create(
+		final boolean planar, final T type, final long seed)
+	{
+		final ImgFactory<T> factory = planar ? new PlanarImgFactory<T>(type)
+			: new ArrayImgFactory<T>(type);
+		final Img<T> img = factory.create(DIMS);
+		final Random r = new Random(seed);
+		final boolean integer = type.getMaxValue() < Float.MAX_VALUE;
+		for (final T t : img) {
+			if (r.nextInt(8) == 0) t.setZero();
+			else if (integer) t.setReal(r.nextInt((int) t.getMaxValue() + 1));
+			else t.setReal(2000 * r.nextDouble() - 1000);
+		}
+		return img;
+	}
+
+}
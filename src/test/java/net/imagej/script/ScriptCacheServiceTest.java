@@ -0,0 +1,260 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2015 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+
+package net.imagej.script;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import javax.script.AbstractScriptEngine;
+import javax.script.Bindings;
+import javax.script.Compilable;
+import javax.script.CompiledScript;
+import javax.script.ScriptContext;
+import javax.script.ScriptEngine;
+import javax.script.ScriptEngineFactory;
+import javax.script.ScriptException;
+import javax.script.SimpleBindings;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.scijava.Context;
+import org.scijava.plugin.PluginInfo;
+import org.scijava.plugin.PluginService;
+import org.scijava.script.AbstractScriptLanguage;
+import org.scijava.script.ScriptLanguage;
+
+/**
+ * Tests {@link DefaultScriptCacheService}.
+ */
+public class ScriptCacheServiceTest {
+
+	@Rule
+	public final TemporaryFolder folder = new TemporaryFolder();
+
+	private Context context;
+	private ScriptCacheService scriptCacheService;
+
+	@Before
+	public void setUp() {
+		context = new Context(ScriptCacheService.class);
+		scriptCacheService = context.service(ScriptCacheService.class);
+		CountingEngine.compilations = 0;
+	}
+
+	@After
+	public void tearDown() {
+		context.dispose();
+	}
+
+	@Test
+	public void testCompileOnce() throws ScriptException {
+		final CountingLanguage language = new CountingLanguage();
+		final CompiledScript compiled =
+			scriptCacheService.compile(language, "hello");
+		assertSame(compiled, scriptCacheService.compile(language, "hello"));
+		assertEquals(1, CountingEngine.compilations);
+		assertEquals(1, scriptCacheService.getHits());
+		assertEquals(1, scriptCacheService.getMisses());
+
+		scriptCacheService.compile(language, "goodbye");
+		assertEquals(2, CountingEngine.compilations);
+
+		scriptCacheService.clearCache();
+		scriptCacheService.compile(language, "hello");
+		assertEquals(3, CountingEngine.compilations);
+	}
+
+	@Test
+	public void testRun() throws ScriptException {
+		final CountingLanguage language = new CountingLanguage();
+		assertEquals("Hello, World", scriptCacheService.run(language, "Hello, $x",
+			Collections.singletonMap("x", "World")));
+		assertEquals("Hello, Moon", scriptCacheService.run(language, "Hello, $x",
+			Collections.singletonMap("x", "Moon")));
+		assertEquals(1, CountingEngine.compilations);
+	}
+
+	@Test
+	public void testSeparateEngines() throws ScriptException {
+		final CountingLanguage language = new CountingLanguage();
+		final CompiledScript compiled =
+			scriptCacheService.compile(language, "Hello, $x");
+		assertEquals("Hello, World", scriptCacheService.run(language, "Hello, $x",
+			Collections.singletonMap("x", "World")));
+
+		// NB: Runs do not share the instance handed out by compile.
+		assertEquals(2, CountingEngine.compilations);
+		assertSame(compiled, scriptCacheService.compile(language, "Hello, $x"));
+	}
+
+	@Test
+	public void testEviction() throws ScriptException {
+		final CountingLanguage language = new CountingLanguage();
+		scriptCacheService.compile(language, "script 0");
+		for (int i = 1; i <= 256; i++) {
+			scriptCacheService.compile(language, "script " + i);
+		}
+		assertEquals(257, CountingEngine.compilations);
+
+		// NB: The least recently used script has been dropped.
+		scriptCacheService.compile(language, "script 0");
+		assertEquals(258, CountingEngine.compilations);
+	}
+
+	@Test
+	public void testRunFile() throws IOException, ScriptException {
+		context.service(PluginService.class).addPlugin(new PluginInfo<>(
+			CountingLanguage.class, ScriptLanguage.class));
+		final File file = folder.newFile("hello.count");
+		Files.write(file.toPath(), Arrays.asList("#@ String x",
+			"#@ LogService log", "Hello, $x from $log"), StandardCharsets.UTF_8);
+
+		// NB: Parameter lines are processed, and the service input is filled in.
+		final String result = scriptCacheService.run(file, Collections
+			.singletonMap("x", "World")).toString().trim();
+		assertTrue(result, result.startsWith("Hello, World from "));
+		assertFalse(result, result.contains("$log") || result.contains("#@"));
+
+		scriptCacheService.run(file, Collections.singletonMap("x", "Moon"));
+		assertEquals(1, CountingEngine.compilations);
+	}
+
+	// -- Helper classes --
+
+	/**
+	 * A trivial language which substitutes {@code $name} with the value of each
+	 * bound variable.
+	 */
+	public static class CountingLanguage extends AbstractScriptLanguage {
+
+		@Override
+		public String getLanguageName() {
+			return "Counting";
+		}
+
+		@Override
+		public List<String> getExtensions() {
+			return Collections.singletonList("count");
+		}
+
+		@Override
+		public ScriptEngine getScriptEngine() {
+			return new CountingEngine(this);
+		}
+	}
+
+	private static class CountingEngine extends AbstractScriptEngine implements
+		Compilable
+	{
+
+		private static int compilations;
+
+		private final ScriptEngineFactory factory;
+
+		public CountingEngine(final ScriptEngineFactory factory) {
+			this.factory = factory;
+		}
+
+		@Override
+		public Object eval(final String script, final ScriptContext ctx) {
+			String result = script;
+			for (final Map.Entry<String, Object> entry : ctx.getBindings(
+				ScriptContext.ENGINE_SCOPE).entrySet())
+			{
+				result = result.replace("$" + entry.getKey(), "" + entry.getValue());
+			}
+			return result;
+		}
+
+		@Override
+		public Object eval(final Reader reader, final ScriptContext ctx) {
+			return eval(read(reader), ctx);
+		}
+
+		@Override
+		public Bindings createBindings() {
+			return new SimpleBindings();
+		}
+
+		@Override
+		public ScriptEngineFactory getFactory() {
+			return factory;
+		}
+
+		@Override
+		public CompiledScript compile(final String script) {
+			compilations++;
+			final ScriptEngine engine = this;
+			return new CompiledScript() {
+
+				@Override
+				public Object eval(final ScriptContext ctx) throws ScriptException {
+					return engine.eval(script, ctx);
+				}
+
+				@Override
+				public ScriptEngine getEngine() {
+					return engine;
+				}
+			};
+		}
+
+		@Override
+		public CompiledScript compile(final Reader reader) {
+			return compile(read(reader));
+		}
+
+		private static String read(final Reader reader) {
+			return new BufferedReader(reader).lines().collect(Collectors.joining(
+				"\n"));
+		}
+	}
+
+}
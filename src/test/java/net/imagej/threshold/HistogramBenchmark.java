@@ -0,0 +1,133 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2015 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+
+package net.imagej.threshold;
+
+import java.util.List;
+
+import net.imglib2.Cursor;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+import net.imglib2.view.Views;
+
+import org.scijava.Context;
+
+/**
+ * Compares a sequential histogram scan against
+ * {@link ThresholdHistogramService} when applying every threshold method to
+ * each plane of a large 16-bit stack.
+ * <p>
+ * Usage: {@code HistogramBenchmark [width height depth]}; defaults to
+ * 2048 x 2048 x 32.
+ * </p>
+ */
+public class HistogramBenchmark {
+
+	private static final int BINS = 65536;
+
+	public static void main(final String... args) {
+		final int w = args.length > 0 ? Integer.parseInt(args[0]) : 2048;
+		final int h = args.length > 1 ? Integer.parseInt(args[1]) : 2048;
+		final int z = args.length > 2 ? Integer.parseInt(args[2]) : 32;
+		final Img<UnsignedShortType> img = createStack(w, h, z);
+
+		final Context context = new Context(ThresholdHistogramService.class);
+		try {
+			final ThresholdService thresholdService =
+				context.service(ThresholdService.class);
+			final ThresholdHistogramService histogramService =
+				context.service(ThresholdHistogramService.class);
+			final List<String> methods = thresholdService.getThresholdMethodNames();
+			System.out.println("Stack: " + w + " x " + h + " x " + z + ", " +
+				methods.size() + " threshold methods");
+
+			long start = System.nanoTime();
+			for (int p = 0; p < z; p++) {
+				for (final String method : methods) {
+					histogramService.threshold(method, sequentialHistogram(img, p));
+				}
+			}
+			report("sequential, rebuilt per method", start);
+
+			start = System.nanoTime();
+			for (int p = 0; p < z; p++) {
+				for (final String method : methods) {
+					histogramService.threshold(method, histogramService.planeHistogram(
+						img, BINS, 0, BINS, p));
+				}
+			}
+			report("parallel, cached", start);
+
+			start = System.nanoTime();
+			for (int p = 0; p < z; p++) {
+				histogramService.planeHistogram(img, BINS, 0, BINS, p);
+			}
+			report("cache hits only", start);
+		}
+		finally {
+			context.dispose();
+		}
+	}
+
+	// -- Helper methods --
+
+	private static Img<UnsignedShortType> createStack(final int w, final int h,
+		final int z)
+	{
+		final short[] data = new short[w * h * z];
+		long seed = 1;
+		for (int i = 0; i < data.length; i++) {
+			seed = seed * 6364136223846793005L + 1442695040888963407L;
+			data[i] = (short) (seed >>> 48);
+		}
+		return ArrayImgs.unsignedShorts(data, w, h, z);
+	}
+
+	private static long[] sequentialHistogram(final Img<UnsignedShortType> img,
+		final long plane)
+	{
+		final long[] histogram = new long[BINS];
+		final Cursor<UnsignedShortType> c = //
+			Views.flatIterable(Views.hyperSlice(img, 2, plane)).cursor();
+		while (c.hasNext()) {
+			histogram[c.next().get()]++;
+		}
+		return histogram;
+	}
+
+	private static void report(final String label, final long start) {
+		final long ms = (System.nanoTime() - start) / 1000000;
+		System.out.println(label + ": " + ms + " ms");
+	}
+
+}
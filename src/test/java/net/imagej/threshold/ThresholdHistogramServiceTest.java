@@ -0,0 +1,125 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2015 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+
+package net.imagej.threshold;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.scijava.Context;
+
+/**
+ * Tests {@link DefaultThresholdHistogramService}.
+ */
+public class ThresholdHistogramServiceTest {
+
+	private Context context;
+	private ThresholdHistogramService histogramService;
+
+	@Before
+	public void setUp() {
+		context = new Context(ThresholdHistogramService.class);
+		histogramService = context.service(ThresholdHistogramService.class);
+	}
+
+	@After
+	public void tearDown() {
+		context.dispose();
+	}
+
+	@Test
+	public void testHistogram() {
+		final Img<UnsignedShortType> img = stack(16, 16, 4);
+		final long[] histogram = histogramService.histogram(img, 4, 0, 1023);
+		final long[] expected = new long[4];
+		for (int v = 0; v < 1024; v++) {
+			expected[Math.min(3, (int) (v * 4 / 1023.0))]++;
+		}
+		assertArrayEquals(expected, histogram);
+	}
+
+	@Test
+	public void testPlaneHistogram() {
+		final Img<UnsignedShortType> img = stack(16, 16, 4);
+		final long[] histogram =
+			histogramService.planeHistogram(img, 4, 0, 1024, 2);
+		// Plane 2 holds the values 512-767, all in the third bin.
+		assertArrayEquals(new long[] { 0, 0, 256, 0 }, histogram);
+	}
+
+	@Test
+	public void testCache() {
+		final short[] data = new short[64];
+		final Img<UnsignedShortType> img = ArrayImgs.unsignedShorts(data, 8, 8);
+		assertEquals(64, histogramService.histogram(img, 2, 0, 10)[0]);
+
+		// Changing the data is not seen until the cache is invalidated.
+		data[0] = 10;
+		assertEquals(64, histogramService.histogram(img, 2, 0, 10)[0]);
+		histogramService.invalidate(img);
+		assertEquals(63, histogramService.histogram(img, 2, 0, 10)[0]);
+
+		// Callers cannot corrupt the cached histogram.
+		histogramService.histogram(img, 2, 0, 10)[0] = -1;
+		assertEquals(63, histogramService.histogram(img, 2, 0, 10)[0]);
+	}
+
+	@Test
+	public void testThreshold() {
+		final long[] histogram = new long[256];
+		histogram[20] = 1000;
+		histogram[200] = 1000;
+		final int t = histogramService.threshold("Otsu", histogram);
+		assertTrue(t >= 20 && t < 200);
+	}
+
+	// -- Helper methods --
+
+	private static Img<UnsignedShortType> stack(final int w, final int h,
+		final int z)
+	{
+		final short[] data = new short[w * h * z];
+		for (int i = 0; i < data.length; i++) {
+			data[i] = (short) i;
+		}
+		return ArrayImgs.unsignedShorts(data, w, h, z);
+	}
+
+}
@@ -0,0 +1,117 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2015 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+
+package net.imagej.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+/**
+ * Tests {@link SourceCache}.
+ */
+public class SourceCacheTest {
+
+	private final AtomicInteger computations = new AtomicInteger();
+
+	@Test
+	public void testHitsAndCopies() {
+		final SourceCache<long[]> cache = cache(1024);
+		final Object source = new Object();
+		final long[] first = //
+			cache.get(source, () -> compute(4), 4, new long[] { 1 });
+		final long[] second = //
+			cache.get(source, () -> compute(4), 4, new long[] { 1 });
+		assertArrayEquals(first, second);
+		assertNotSame(first, second);
+		assertEquals(1, computations.get());
+		assertEquals(1, cache.getHits());
+		assertEquals(1, cache.getMisses());
+
+		cache.get(source, () -> compute(4), 4, new long[] { 2 });
+		assertEquals(2, computations.get());
+	}
+
+	@Test
+	public void testWeightBound() {
+		// NB: Room for two histograms of 8 bins.
+		final SourceCache<long[]> cache = cache(2 * 8 * Long.BYTES);
+		final Object a = new Object(), b = new Object(), c = new Object();
+		cache.get(a, () -> compute(8));
+		cache.get(b, () -> compute(8));
+		cache.get(a, () -> compute(8)); // NB: now b is least recently used
+		cache.get(c, () -> compute(8));
+		assertEquals(3, computations.get());
+		assertEquals(2 * 8 * Long.BYTES, cache.getWeight());
+
+		cache.get(a, () -> compute(8));
+		assertEquals(3, computations.get());
+		cache.get(b, () -> compute(8));
+		assertEquals(4, computations.get());
+
+		// NB: Values larger than the whole cache are never stored.
+		cache.get(a, () -> compute(64), "large");
+		cache.get(a, () -> compute(64), "large");
+		assertEquals(6, computations.get());
+	}
+
+	@Test
+	public void testInvalidate() {
+		final SourceCache<long[]> cache = cache(1024);
+		final Object a = new Object(), b = new Object();
+		cache.get(a, () -> compute(4));
+		cache.get(b, () -> compute(4));
+		cache.invalidate(a);
+		assertEquals(4 * Long.BYTES, cache.getWeight());
+		cache.get(a, () -> compute(4));
+		cache.get(b, () -> compute(4));
+		assertEquals(3, computations.get());
+
+		cache.clear();
+		assertEquals(0, cache.getWeight());
+	}
+
+	private SourceCache<long[]> cache(final long capacity) {
+		return new SourceCache<>(capacity, v -> (long) v.length * Long.BYTES,
+			long[]::clone);
+	}
+
+	private long[] compute(final int bins) {
+		computations.incrementAndGet();
+		return new long[bins];
+	}
+
+}